@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.benchmarks;
+
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * A set of generated MCP vessel certificates that the benchmarks cycle through, so that the
+ * results are not based on one certificate staying hot in the CPU caches
+ */
+@State(Scope.Benchmark)
+public class CertificateCorpus {
+
+    @Param({"1000"})
+    public int size;
+
+    X509Certificate[] certificates;
+    String[] pems;
+
+    @Setup
+    public void generate() {
+        TestCertificateAuthority subCa = TestCertificateAuthority.createRoot("Benchmark Root CA")
+                .createSubCa("Benchmark Sub CA");
+        certificates = new X509Certificate[size];
+        pems = new String[size];
+        for (int i = 0; i < size; i++) {
+            certificates[i] = subCa.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:benchmark:" + i,
+                    "Benchmark Vessel " + i, "http://localhost/ocsp");
+            pems[i] = TestCertificateAuthority.toPem(certificates[i]);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.maritimeconnectivity.extractid.config.CRLProperties;
+import net.maritimeconnectivity.extractid.config.OCSPConfig;
+import net.maritimeconnectivity.extractid.config.OCSPProperties;
+import net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport;
+import net.maritimeconnectivity.extractid.controllers.ClientIdentityController;
+import net.maritimeconnectivity.extractid.controllers.ExtractIdentityController;
+import net.maritimeconnectivity.extractid.controllers.ValidationController;
+import net.maritimeconnectivity.extractid.exceptions.MCPExceptionResolver;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.services.CRLStore;
+import net.maritimeconnectivity.extractid.services.CertificateCache;
+import net.maritimeconnectivity.extractid.services.ChainValidator;
+import net.maritimeconnectivity.extractid.services.OCSPResponseCache;
+import net.maritimeconnectivity.extractid.services.OCSPService;
+import net.maritimeconnectivity.extractid.services.TlsSessionCache;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * End to end throughput of the extraction endpoints through the Spring MVC stack, including
+ * request mapping, message conversion and JSON serialization of the response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerBenchmark {
+
+    // whether the corpus fits in the certificate cache
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private MockMvc mvc;
+    private CloseableHttpAsyncClient httpClient;
+
+    @Setup(Level.Trial)
+    public void setUp(CertificateCorpus corpus) {
+        OCSPProperties ocspProperties = new OCSPProperties();
+        httpClient = new OCSPConfig().ocspHttpClient(ocspProperties);
+        OCSPService ocspService = new OCSPService(httpClient, new OCSPResponseCache(1000, Duration.ofHours(1)),
+                ocspProperties);
+        CertificateCache certificateCache = new CertificateCache(cached ? corpus.size : 0, Duration.ofHours(1));
+        TlsSessionCache tlsSessionCache = new TlsSessionCache(cached ? corpus.size : 0, Duration.ofHours(1),
+                certificateCache, ExtractionMetrics.noop());
+        CertificateRequestSupport support = new CertificateRequestSupport(certificateCache, ExtractionMetrics.noop());
+        mvc = MockMvcBuilders.standaloneSetup(
+                new ExtractIdentityController(support, certificateCache, ExtractionMetrics.noop(), new ObjectMapper(), 1000),
+                new ClientIdentityController(support, tlsSessionCache, ExtractionMetrics.noop()),
+                new ValidationController(support, ocspService, new CRLStore(new CRLProperties()),
+                        new ChainValidator(Collections.emptyList(), Collections.emptyList(), 1000, 8, 16, 1000,
+                                ExtractionMetrics.noop()), ExtractionMetrics.noop(), 50000))
+                .setControllerAdvice(new MCPExceptionResolver())
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        httpClient.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int nextIndex(int size) {
+            next = next + 1 < size ? next + 1 : 0;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public String extractMcpIdentity(CertificateCorpus corpus, Cursor cursor) throws Exception {
+        return mvc.perform(post("/api/extract/mcp")
+                .content(corpus.pems[cursor.nextIndex(corpus.size)])
+                .contentType("application/x-pem-file")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String extractX509Attributes(CertificateCorpus corpus, Cursor cursor) throws Exception {
+        return mvc.perform(post("/api/extract/x509")
+                .content(corpus.pems[cursor.nextIndex(corpus.size)])
+                .contentType("application/x-pem-file")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String extractClientIdentity(CertificateCorpus corpus, Cursor cursor) throws Exception {
+        int index = cursor.nextIndex(corpus.size);
+        // as a client that resumes its TLS session and asks who it is
+        return mvc.perform(get("/api/extract/mcp/client")
+                .requestAttr(TlsSessionCache.CLIENT_CERTIFICATE_ATTRIBUTE, new X509Certificate[]{corpus.certificates[index]})
+                .requestAttr(TlsSessionCache.SESSION_ID_ATTRIBUTE, "session-" + index)
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString();
+    }
+}
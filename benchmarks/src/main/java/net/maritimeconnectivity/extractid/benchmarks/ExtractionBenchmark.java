@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.pki.CertificateHandler;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The steps the extraction endpoints go through for every certificate, measured one by one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    private ObjectMapper objectMapper;
+    private PKIIdentity[] identities;
+    private int next;
+
+    @Setup
+    public void setUp(CertificateCorpus corpus) {
+        // configured like the ObjectMapper that Spring Boot gives the controllers
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        identities = new PKIIdentity[corpus.size];
+        for (int i = 0; i < corpus.size; i++) {
+            identities[i] = CertificateUtils.getIdentity(corpus.certificates[i]);
+        }
+    }
+
+    private int nextIndex(int size) {
+        next = next + 1 < size ? next + 1 : 0;
+        return next;
+    }
+
+    @Benchmark
+    public X509Certificate getCertFromPem(CertificateCorpus corpus) {
+        return CertificateHandler.getCertFromPem(corpus.pems[nextIndex(corpus.size)]);
+    }
+
+    @Benchmark
+    public PKIIdentity getIdentityFromCert(CertificateCorpus corpus) {
+        return CertificateUtils.getIdentity(corpus.certificates[nextIndex(corpus.size)]);
+    }
+
+    @Benchmark
+    public void createX509CertAttribute(CertificateCorpus corpus, Blackhole blackhole) {
+        // the attributes are computed when they are first read, as during serialization
+        X509CertAttribute attributes = new X509CertAttribute(corpus.certificates[nextIndex(corpus.size)]);
+        blackhole.consume(attributes.getValidFrom());
+        blackhole.consume(attributes.getValidTo());
+        blackhole.consume(attributes.getSubject());
+        blackhole.consume(attributes.getIssuer());
+    }
+
+    @Benchmark
+    public byte[] serializeIdentity() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(identities[nextIndex(identities.length)]);
+    }
+}
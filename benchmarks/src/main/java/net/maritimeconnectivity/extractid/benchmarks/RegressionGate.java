@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs all benchmarks and compares their throughput with a stored baseline. Exits with a non-zero
+ * status if any benchmark is slower than the baseline by more than the given tolerance.
+ * With -Dgate.update=true the current scores are written as the new baseline instead.
+ */
+public final class RegressionGate {
+
+    private RegressionGate() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        if (args.length != 2) {
+            System.err.println("Usage: RegressionGate <baseline file> <tolerance>");
+            System.exit(2);
+        }
+        Path baselineFile = Paths.get(args[0]);
+        double tolerance = Double.parseDouble(args[1]);
+
+        Options options = new OptionsBuilder()
+                .include(RegressionGate.class.getPackage().getName() + ".*Benchmark")
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        TreeMap<String, Double> scores = new TreeMap<>();
+        for (RunResult result : results) {
+            scores.put(getKey(result), result.getPrimaryResult().getScore());
+        }
+
+        if (Boolean.getBoolean("gate.update")) {
+            List<String> lines = new ArrayList<>();
+            lines.add("# Throughput baseline in ops/s, recorded with -Dgate.update=true");
+            scores.forEach((key, score) -> lines.add(key + "=" + String.format("%.0f", score)));
+            Files.write(baselineFile, lines, StandardCharsets.UTF_8);
+            System.out.println("Wrote new baseline to " + baselineFile);
+            return;
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        List<String> regressions = new ArrayList<>();
+        scores.forEach((key, score) -> {
+            String expected = baseline.getProperty(key);
+            if (expected == null) {
+                System.out.printf("%-66s %12.0f ops/s (no baseline)%n", key, score);
+                return;
+            }
+            double minimum = Double.parseDouble(expected) * (1 - tolerance);
+            System.out.printf("%-66s %12.0f ops/s (baseline %s)%n", key, score, expected);
+            if (score < minimum) {
+                regressions.add(String.format("%s: %.0f ops/s is below %.0f ops/s", key, score, minimum));
+            }
+        });
+        if (!regressions.isEmpty()) {
+            System.err.println("Throughput regressions:");
+            regressions.forEach(regression -> System.err.println("  " + regression));
+            System.exit(1);
+        }
+    }
+
+    private static String getKey(RunResult result) {
+        String benchmark = result.getParams().getBenchmark();
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.',
+                benchmark.lastIndexOf('.') - 1) + 1));
+        for (String param : result.getParams().getParamsKeys()) {
+            key.append('.').append(param).append('-').append(result.getParams().getParam(param));
+        }
+        return key.toString();
+    }
+}
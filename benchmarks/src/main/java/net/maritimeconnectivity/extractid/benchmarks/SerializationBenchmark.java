@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.benchmarks;
+
+import net.maritimeconnectivity.extractid.model.BatchResult;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.extractid.utils.ProtobufSchemaHttpMessageConverter;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the extraction results in each of the response formats through the message converters the
+ * service uses. The average sizes of the formats, also after gzip compression, are printed when the
+ * benchmark is set up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final Type BATCH_TYPE = new ParameterizedTypeReference<List<BatchResult<PKIIdentity>>>() { }.getType();
+
+    @Param({"json", "cbor", "protobuf"})
+    public String format;
+
+    private GenericHttpMessageConverter<Object> converter;
+    private MediaType mediaType;
+    private PKIIdentity[] identities;
+    private X509CertAttribute[] attributes;
+    private List<BatchResult<PKIIdentity>> batch;
+    private int next;
+
+    @Setup
+    public void setUp(CertificateCorpus corpus) throws IOException, CertificateEncodingException {
+        switch (format) {
+            case "cbor":
+                converter = new MappingJackson2CborHttpMessageConverter(Jackson2ObjectMapperBuilder.cbor().build());
+                mediaType = MediaType.APPLICATION_CBOR;
+                break;
+            case "protobuf":
+                converter = new ProtobufSchemaHttpMessageConverter();
+                mediaType = MediaType.valueOf(ProtobufSchemaHttpMessageConverter.PROTOBUF_VALUE);
+                break;
+            default:
+                // configured like the ObjectMapper that Spring Boot gives the controllers
+                converter = new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+                mediaType = MediaType.APPLICATION_JSON;
+        }
+
+        identities = new PKIIdentity[corpus.size];
+        attributes = new X509CertAttribute[corpus.size];
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < corpus.size; i++) {
+            identities[i] = CertificateUtils.getIdentity(corpus.certificates[i]);
+            attributes[i] = new X509CertAttribute(corpus.certificates[i]).withFields(X509CertAttribute.OPTIONAL_FIELDS,
+                    CertificateUtils.sha256Fingerprint(corpus.certificates[i].getEncoded()));
+            if (i < BATCH_SIZE) {
+                batch.add(new BatchResult<>(i, identities[i], null));
+            }
+        }
+
+        long identityBytes = 0;
+        long attributeBytes = 0;
+        for (int i = 0; i < corpus.size; i++) {
+            identityBytes += write(identities[i], PKIIdentity.class).length;
+            attributeBytes += write(attributes[i], X509CertAttribute.class).length;
+        }
+        byte[] batchBytes = write(batch, BATCH_TYPE);
+        System.out.printf("%nAverage size of %s: identity %d bytes, attributes %d bytes, batch of %d %d bytes"
+                        + " (%d bytes with gzip)%n", format, identityBytes / corpus.size, attributeBytes / corpus.size,
+                BATCH_SIZE, batchBytes.length, gzip(batchBytes).length);
+    }
+
+    private int nextIndex(int size) {
+        next = next + 1 < size ? next + 1 : 0;
+        return next;
+    }
+
+    @Benchmark
+    public byte[] writeIdentity() throws IOException {
+        return write(identities[nextIndex(identities.length)], PKIIdentity.class);
+    }
+
+    @Benchmark
+    public byte[] writeAttributes() throws IOException {
+        return write(attributes[nextIndex(attributes.length)], X509CertAttribute.class);
+    }
+
+    @Benchmark
+    public byte[] writeBatch() throws IOException {
+        return write(batch, BATCH_TYPE);
+    }
+
+    private byte[] write(Object result, Type type) throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(result, type, mediaType, output);
+        return output.getBodyAsBytes();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
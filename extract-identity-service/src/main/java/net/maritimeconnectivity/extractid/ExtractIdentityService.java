@@ -16,13 +16,20 @@
 
 package net.maritimeconnectivity.extractid;
 
+import net.maritimeconnectivity.extractid.cli.BulkExtractCommand;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.util.Arrays;
+
 @SpringBootApplication
 public class ExtractIdentityService {
 
     public static void main(String[] args) {
+        if (args.length > 0 && BulkExtractCommand.NAME.equals(args[0])) {
+            BulkExtractCommand.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SpringApplication.run(ExtractIdentityService.class, args);
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line mode that extracts the identities and attributes of all certificates in a directory
+ * or tar archive, without starting the web service:
+ * <pre>
+ * java -jar extract-identity-service-latest.war extract --input &lt;directory|archive.tar[.gz]&gt;
+ *     --output &lt;file|directory|-&gt; [--format ndjson|csv|columnar] [--parallelism &lt;threads&gt;]
+ * </pre>
+ */
+public final class BulkExtractCommand {
+
+    public static final String NAME = "extract";
+
+    private static final String USAGE = "Usage: extract --input <directory|archive.tar[.gz]> --output <file|directory|->"
+            + " [--format ndjson|csv|columnar] [--parallelism <threads>]";
+    private static final String STANDARD_OUTPUT = "-";
+
+    private BulkExtractCommand() {
+    }
+
+    public static void main(String[] args) {
+        LoggingSystem.get(BulkExtractCommand.class.getClassLoader())
+                .setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * @return the exit code, 0 if every file was read and all results were written, even if some
+     *         of the files did not contain valid certificates
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                err.println(USAGE);
+                return 2;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        String format = options.getOrDefault("format", "ndjson");
+        if (!options.containsKey("input") || !options.containsKey("output")
+                || (STANDARD_OUTPUT.equals(options.get("output")) && "columnar".equals(format))) {
+            err.println(USAGE);
+            return 2;
+        }
+        int parallelism;
+        try {
+            parallelism = Integer.parseInt(options.getOrDefault("parallelism",
+                    Integer.toString(Runtime.getRuntime().availableProcessors())));
+        } catch (NumberFormatException e) {
+            err.println(USAGE);
+            return 2;
+        }
+        Path input = Paths.get(options.get("input"));
+        String output = options.get("output");
+
+        long start = System.nanoTime();
+        BulkExtractor.Summary summary;
+        try (RecordWriter writer = createWriter(format, output, out)) {
+            if (writer == null) {
+                err.println("Unknown format " + format + ". " + USAGE);
+                return 2;
+            }
+            summary = new BulkExtractor(writer, parallelism).extract(input);
+        } catch (IOException e) {
+            err.println("Extraction failed: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Extraction was interrupted");
+            return 1;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        err.printf("Extracted %d certificates from %d files in %.1f s (%.0f certificates/s), %d failed%n",
+                summary.getCertificates(), summary.getFiles(), seconds, summary.getCertificates() / seconds,
+                summary.getFailures());
+        return 0;
+    }
+
+    private static RecordWriter createWriter(String format, String output, PrintStream out) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        switch (format) {
+            case "ndjson":
+                return new NdjsonRecordWriter(openOutput(output, out), objectMapper);
+            case "csv":
+                return new CsvRecordWriter(new BufferedWriter(new OutputStreamWriter(openOutput(output, out),
+                        StandardCharsets.UTF_8)), objectMapper);
+            case "columnar":
+                return new ColumnarRecordWriter(Paths.get(output), objectMapper);
+            default:
+                return null;
+        }
+    }
+
+    private static OutputStream openOutput(String output, PrintStream out) throws IOException {
+        return new BufferedOutputStream(STANDARD_OUTPUT.equals(output) ? out : Files.newOutputStream(Paths.get(output)),
+                1 << 16);
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.cli;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.extractid.utils.PemBlockReader;
+import net.maritimeconnectivity.extractid.utils.Pkcs7CertificateReader;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts the PKI identity and X.509 attributes of every certificate in a directory tree or a
+ * tar archive. Files are read and parsed on a fork-join pool, while the directory or archive is
+ * read by the calling thread. A file can be a PEM bundle, a PKCS#7 bundle ending in .p7b or .p7c,
+ * or a single DER certificate.
+ */
+@Slf4j
+public class BulkExtractor {
+
+    // smaller files are read into an array, which is cheaper than mapping them
+    private static final long MAP_THRESHOLD = 64 * 1024;
+    private static final int MAX_PEM_BLOCK_LENGTH = 64 * 1024;
+    private static final long MAX_ENTRY_SIZE = 256L * 1024 * 1024;
+    private static final byte[] PEM_BLOCK_START = "-----BEGIN ".getBytes(StandardCharsets.US_ASCII);
+    private static final String PRIVATE_KEY = "PRIVATE KEY-----";
+    private static final List<String> PKCS7_EXTENSIONS = Arrays.asList(".p7b", ".p7c");
+    private static final List<String> GZIP_EXTENSIONS = Arrays.asList(".gz", ".tgz");
+
+    private final RecordWriter writer;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final AtomicReference<IOException> writeFailure = new AtomicReference<>();
+    private final LongAdder sources = new LongAdder();
+    private final LongAdder certificates = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public BulkExtractor(RecordWriter writer, int parallelism) {
+        this.writer = writer;
+        this.parallelism = parallelism;
+        // bounds the memory held by files that have been read but not yet parsed
+        this.maxInFlight = parallelism * 16;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Extracts every file below a directory, or every file in a tar archive that may be gzip compressed
+     * @param input the directory or archive
+     * @return      the number of files and certificates that were read
+     * @throws IOException if the input could not be read or the results could not be written
+     */
+    public Summary extract(Path input) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            if (Files.isDirectory(input)) {
+                extractDirectory(pool, input);
+            } else {
+                extractArchive(pool, input);
+            }
+            // every task holds a permit until it is done
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } finally {
+            pool.shutdown();
+        }
+        IOException failure = writeFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        return new Summary(sources.sum(), certificates.sum(), failures.sum());
+    }
+
+    private void extractDirectory(ForkJoinPool pool, Path directory) throws IOException, InterruptedException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            Iterator<Path> iterator = files.filter(Files::isRegularFile).iterator();
+            while (iterator.hasNext() && writeFailure.get() == null) {
+                Path file = iterator.next();
+                String source = directory.relativize(file).toString();
+                submit(pool, () -> extractFile(source, file));
+            }
+        }
+    }
+
+    private void extractArchive(ForkJoinPool pool, Path archive) throws IOException, InterruptedException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive), 1 << 16);
+        if (hasExtension(archive.getFileName().toString(), GZIP_EXTENSIONS)) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(in)) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null && writeFailure.get() == null) {
+                if (!entry.isFile()) {
+                    continue;
+                }
+                String source = entry.getName();
+                if (entry.getSize() > MAX_ENTRY_SIZE) {
+                    sources.increment();
+                    record(ExtractedRecord.failed(source, 0, "File is larger than " + MAX_ENTRY_SIZE + " bytes"));
+                    continue;
+                }
+                byte[] content = new byte[(int) entry.getSize()];
+                IOUtils.readFully(tar, content);
+                submit(pool, () -> extractCertificates(source, ByteBuffer.wrap(content)));
+            }
+        }
+    }
+
+    private void submit(ForkJoinPool pool, Runnable task) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            pool.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void extractFile(String source, Path file) {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                content = ByteBuffer.allocate((int) size);
+                while (content.hasRemaining()) {
+                    if (channel.read(content) < 0) {
+                        break;
+                    }
+                }
+                content.flip();
+            }
+        } catch (IOException e) {
+            sources.increment();
+            record(ExtractedRecord.failed(source, 0, "Could not read the file: " + e.getMessage()));
+            return;
+        }
+        extractCertificates(source, content);
+    }
+
+    private void extractCertificates(String source, ByteBuffer content) {
+        sources.increment();
+        int index = 0;
+        try {
+            if (isPem(content)) {
+                PemBlockReader reader = new PemBlockReader(new InputStreamReader(new ByteBufferInputStream(content),
+                        StandardCharsets.US_ASCII), MAX_PEM_BLOCK_LENGTH);
+                for (String pemCert = reader.next(); pemCert != null; pemCert = reader.next()) {
+                    record(extractPem(source, index++, pemCert));
+                }
+            } else if (hasExtension(source, PKCS7_EXTENSIONS)) {
+                Pkcs7CertificateReader reader = new Pkcs7CertificateReader(new ByteBufferInputStream(content));
+                for (byte[] der = reader.next(); der != null; der = reader.next()) {
+                    record(extract(source, index++, der));
+                }
+            } else {
+                byte[] der = new byte[content.remaining()];
+                content.get(der);
+                record(extract(source, index++, der));
+            }
+            if (index == 0) {
+                record(ExtractedRecord.failed(source, 0, "The file contains no certificates"));
+            }
+        } catch (IOException e) {
+            record(ExtractedRecord.failed(source, index, "Could not read the rest of the file: " + e.getMessage()));
+        } catch (RuntimeException e) {
+            log.warn("Extraction from {} failed", source, e);
+            record(ExtractedRecord.failed(source, index, "Could not read the rest of the file"));
+        }
+    }
+
+    private static ExtractedRecord extractPem(String source, int index, String pemCert) {
+        int headerEnd = pemCert.indexOf('\n');
+        if ((headerEnd < 0 ? pemCert : pemCert.substring(0, headerEnd)).contains(PRIVATE_KEY)) {
+            return ExtractedRecord.failed(source, index, "This is a private key, not a certificate");
+        }
+        byte[] der = CertificateUtils.pemToDer(pemCert);
+        if (der == null) {
+            return ExtractedRecord.failed(source, index, "Not a valid PEM encoded certificate");
+        }
+        return extract(source, index, der);
+    }
+
+    private static ExtractedRecord extract(String source, int index, byte[] der) {
+        X509Certificate cert = CertificateUtils.getCertFromDer(der);
+        if (cert == null) {
+            return ExtractedRecord.failed(source, index, "Not a valid certificate");
+        }
+        try {
+            PKIIdentity identity = CertificateUtils.getIdentity(cert);
+            X509CertAttribute attributes = new X509CertAttribute(cert)
+                    .withFields(X509CertAttribute.OPTIONAL_FIELDS, CertificateUtils.sha256Fingerprint(der));
+            return new ExtractedRecord(source, index, identity, attributes, null);
+        } catch (RuntimeException e) {
+            log.debug("Extraction of certificate {} of {} failed", index, source, e);
+            return ExtractedRecord.failed(source, index, "Could not extract information from the certificate");
+        }
+    }
+
+    private void record(ExtractedRecord record) {
+        if (record.getError() == null) {
+            certificates.increment();
+        } else {
+            failures.increment();
+        }
+        try {
+            writer.write(record);
+        } catch (IOException e) {
+            writeFailure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * @return whether a PEM block starts somewhere in the first part of the content
+     */
+    private static boolean isPem(ByteBuffer content) {
+        int end = (int) Math.min(content.limit(), MAP_THRESHOLD) - PEM_BLOCK_START.length;
+        for (int i = content.position(); i <= end; i++) {
+            int j = 0;
+            while (j < PEM_BLOCK_START.length && content.get(i + j) == PEM_BLOCK_START[j]) {
+                j++;
+            }
+            if (j == PEM_BLOCK_START.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasExtension(String name, List<String> extensions) {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        return extensions.stream().anyMatch(lowerCase::endsWith);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Summary {
+        private final long files;
+        private final long certificates;
+        private final long failures;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes each column to a file of its own in an output directory, so that an audit that needs a
+ * few columns of millions of records only reads those. Line n of every column file belongs to the
+ * same record, and each line holds the value as a JSON string, or null. The directory also
+ * contains a schema.json listing the columns and the number of records.
+ */
+public class ColumnarRecordWriter extends TabularRecordWriter {
+
+    public static final String SCHEMA_FILE = "schema.json";
+    public static final String COLUMN_FILE_SUFFIX = ".jsonl";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final List<BufferedWriter> columnWriters = new ArrayList<>();
+    private long rows;
+
+    public ColumnarRecordWriter(Path directory, ObjectMapper objectMapper) throws IOException {
+        super(objectMapper);
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(directory);
+        for (String column : getColumns()) {
+            columnWriters.add(new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(directory.resolve(column + COLUMN_FILE_SUFFIX)), StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Override
+    public void write(ExtractedRecord record) throws IOException {
+        List<String> values = getValues(record);
+        List<String> encoded = new ArrayList<>(values.size());
+        for (String value : values) {
+            encoded.add(objectMapper.writeValueAsString(value));
+        }
+        synchronized (this) {
+            for (int i = 0; i < encoded.size(); i++) {
+                BufferedWriter writer = columnWriters.get(i);
+                writer.write(encoded.get(i));
+                writer.write('\n');
+            }
+            rows++;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (BufferedWriter writer : columnWriters) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        Map<String, Object> schema = new LinkedHashMap<>();
+        schema.put("columns", getColumns());
+        schema.put("rows", rows);
+        objectMapper.writeValue(directory.resolve(SCHEMA_FILE).toFile(), schema);
+    }
+}
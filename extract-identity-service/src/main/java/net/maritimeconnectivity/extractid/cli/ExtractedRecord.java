@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.cli;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.maritimeconnectivity.extractid.model.JsonSerializable;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.pki.PKIIdentity;
+
+/**
+ * What was extracted from one certificate of a bulk extraction, or why nothing could be extracted
+ */
+@Getter
+@AllArgsConstructor
+public class ExtractedRecord implements JsonSerializable {
+    // the file or archive entry the certificate was read from
+    private final String source;
+    // the position of the certificate in its source, which can contain more than one
+    private final int index;
+    private final PKIIdentity identity;
+    @JsonProperty("x509")
+    private final X509CertAttribute attributes;
+    private final String error;
+
+    public static ExtractedRecord failed(String source, int index, String error) {
+        return new ExtractedRecord(source, index, null, null, error);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the records of a bulk extraction in one output format. Records are written from many
+ * threads at once and in no particular order.
+ */
+public interface RecordWriter extends Closeable {
+
+    void write(ExtractedRecord record) throws IOException;
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.cli;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import net.maritimeconnectivity.pki.PKIIdentity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static net.maritimeconnectivity.extractid.model.X509CertAttribute.FINGERPRINT;
+import static net.maritimeconnectivity.extractid.model.X509CertAttribute.KEY_ALGORITHM;
+import static net.maritimeconnectivity.extractid.model.X509CertAttribute.SERIAL_NUMBER;
+import static net.maritimeconnectivity.extractid.model.X509CertAttribute.SUBJECT_ALTERNATIVE_NAMES;
+
+/**
+ * Base of the writers that put every record into the same flat list of columns: the source of the
+ * record, the fields of the PKI identity and the X.509 attributes
+ */
+public abstract class TabularRecordWriter implements RecordWriter {
+
+    private static final List<String> RECORD_COLUMNS = Arrays.asList("source", "index", "error");
+    private static final List<String> ATTRIBUTE_COLUMNS = Arrays.asList("validFrom", "validTo", "subject", "issuer",
+            SERIAL_NUMBER, FINGERPRINT, KEY_ALGORITHM, SUBJECT_ALTERNATIVE_NAMES);
+
+    private final ObjectMapper objectMapper;
+    private final List<String> identityColumns;
+    private final List<String> columns;
+
+    protected TabularRecordWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        // all serializable properties of an identity, since the identities themselves leave out missing fields
+        BeanDescription identity = objectMapper.getSerializationConfig()
+                .introspect(objectMapper.constructType(PKIIdentity.class));
+        this.identityColumns = new ArrayList<>();
+        for (BeanPropertyDefinition property : identity.findProperties()) {
+            if (property.couldSerialize()) {
+                identityColumns.add(property.getName());
+            }
+        }
+        List<String> all = new ArrayList<>(RECORD_COLUMNS);
+        all.addAll(identityColumns);
+        all.addAll(ATTRIBUTE_COLUMNS);
+        this.columns = Collections.unmodifiableList(all);
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the value of each column for the record, null where the record has no value.
+     *         Values that are not strings, like the list of alternative names, are given as JSON.
+     */
+    protected List<String> getValues(ExtractedRecord record) throws JsonProcessingException {
+        List<String> values = new ArrayList<>(columns.size());
+        values.add(record.getSource());
+        values.add(Integer.toString(record.getIndex()));
+        values.add(record.getError());
+        addValues(values, record.getIdentity(), identityColumns);
+        addValues(values, record.getAttributes(), ATTRIBUTE_COLUMNS);
+        return values;
+    }
+
+    private void addValues(List<String> values, Object source, List<String> names) throws JsonProcessingException {
+        Map<?, ?> properties = source == null ? Collections.emptyMap() : objectMapper.convertValue(source, Map.class);
+        for (String name : names) {
+            Object value = properties.get(name);
+            if (value == null || value instanceof String) {
+                values.add((String) value);
+            } else {
+                values.add(objectMapper.writeValueAsString(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "extractid.crl")
+public class CRLProperties {
+
+    // directory for the revocation index files, a temporary directory is used if none is given
+    private String directory;
+
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration readTimeout = Duration.ofSeconds(30);
+
+    // how often a CRL without nextUpdate is reloaded
+    private Duration refreshInterval = Duration.ofHours(1);
+
+    // shortest time between two reloads of the same CRL
+    private Duration minRefreshInterval = Duration.ofMinutes(1);
+
+    // time before trying again when a CRL could not be loaded
+    private Duration retryInterval = Duration.ofMinutes(5);
+
+    private List<Authority> authorities = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Authority {
+        // path of the PEM encoded certificate of the CA that signs the CRL
+        private String issuerCertificate;
+
+        // http(s) URL or file path of the CRL, in DER or PEM encoding
+        private String crl;
+    }
+}
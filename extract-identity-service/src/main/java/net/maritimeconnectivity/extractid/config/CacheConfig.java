@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.services.CertificateCache;
+import net.maritimeconnectivity.extractid.services.MappedFileSharedCache;
+import net.maritimeconnectivity.extractid.services.RedisSharedCache;
+import net.maritimeconnectivity.extractid.services.SharedCache;
+import net.maritimeconnectivity.extractid.services.TlsSessionCache;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+@Configuration
+@EnableConfigurationProperties({CertificateCacheProperties.class, SharedCacheProperties.class,
+        TlsSessionCacheProperties.class})
+public class CacheConfig {
+
+    @Bean(destroyMethod = "close")
+    public SharedCache sharedCache(SharedCacheProperties properties) throws IOException {
+        switch (properties.getType()) {
+            case FILE:
+                return new MappedFileSharedCache(properties.getFile().getPath(),
+                        properties.getFile().getMaxSize().toBytes());
+            case REDIS:
+                return new RedisSharedCache(properties.getRedis().getUrl(), properties.getRedis().getTimeout(),
+                        properties.getRedis().getKeyPrefix());
+            default:
+                return SharedCache.none();
+        }
+    }
+
+    @Bean
+    public CertificateCache certificateCache(CertificateCacheProperties properties, ExtractionMetrics extractionMetrics) {
+        return new CertificateCache(properties.getMaxSize(), properties.getTtl(), extractionMetrics);
+    }
+
+    @Bean
+    public TlsSessionCache tlsSessionCache(TlsSessionCacheProperties properties, CertificateCache certificateCache,
+                                           ExtractionMetrics extractionMetrics) {
+        return new TlsSessionCache(properties.getMaxSize(), properties.getTtl(), certificateCache, extractionMetrics);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lets the embedded Tomcat handle requests on virtual threads instead of its worker pool when
+ * extractid.web.virtual-threads is set and the service runs on Java 21 or newer. The executor is
+ * looked up reflectively so the service still builds and runs on Java 8.
+ */
+@Configuration
+@Slf4j
+public class ExecutionConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "extractid.web.virtual-threads", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadExecutorCustomizer() {
+        ExecutorService executor = createVirtualThreadExecutor();
+        return protocolHandler -> {
+            if (executor != null && protocolHandler instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) protocolHandler).setExecutor(executor);
+                log.info("Handling requests on virtual threads");
+            }
+        };
+    }
+
+    /**
+     * @return an executor that starts a virtual thread for each task, or null if the runtime has no virtual threads
+     */
+    public static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("Virtual threads need Java 21 or newer, requests are handled by the Tomcat worker pool");
+            return null;
+        }
+    }
+}
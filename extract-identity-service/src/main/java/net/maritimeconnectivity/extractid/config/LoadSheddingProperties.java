@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "extractid.limits")
+public class LoadSheddingProperties {
+
+    // whether requests above the concurrency limits are rejected with 503
+    private boolean enabled = true;
+
+    // certificate parsing and extraction, which is bound by CPU
+    private final Concurrency extraction = new Concurrency(32, 4, 256, Duration.ofMillis(500));
+
+    // OCSP checks, which mostly wait for the responders
+    private final Concurrency ocsp = new Concurrency(200, 10, 2000, Duration.ofSeconds(2));
+
+    private final Rate rate = new Rate();
+
+    @Getter
+    @Setter
+    public static class Concurrency {
+
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+
+        // requests that take longer than this make the limit shrink
+        private Duration latencyThreshold;
+
+        Concurrency(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyThreshold = latencyThreshold;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Rate {
+
+        // steady requests per second allowed per client, 0 turns rate limiting off
+        private double requestsPerSecond = 0;
+
+        // requests a client that has been idle may send at once
+        private int burst = 50;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.TimedJacksonHttpMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+@Configuration
+public class MetricsConfig {
+
+    // the responder URLs come from the certificates that are checked, so their number is capped
+    private static final int MAX_RESPONDER_TAGS = 100;
+
+    @Bean
+    public MeterFilter responderTagLimit() {
+        return MeterFilter.maximumAllowableTags("extractid.ocsp", ExtractionMetrics.RESPONDER_TAG,
+                MAX_RESPONDER_TAGS, MeterFilter.deny());
+    }
+
+    @Bean
+    public ExtractionMetrics extractionMetrics(MeterRegistry meterRegistry) {
+        return new ExtractionMetrics(meterRegistry);
+    }
+
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper,
+                                                                                   ExtractionMetrics extractionMetrics) {
+        return new TimedJacksonHttpMessageConverter(objectMapper, extractionMetrics);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.services.CertificateCache;
+import net.maritimeconnectivity.extractid.services.HotCertificates;
+import net.maritimeconnectivity.extractid.services.OCSPRefresher;
+import net.maritimeconnectivity.extractid.services.OCSPResponseCache;
+import net.maritimeconnectivity.extractid.services.OCSPService;
+import net.maritimeconnectivity.extractid.services.SharedCache;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+@Configuration
+@EnableConfigurationProperties(OCSPProperties.class)
+public class OCSPConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient ocspHttpClient(OCSPProperties properties) {
+        CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(properties.getMaxConnections())
+                .setMaxConnPerRoute(properties.getMaxConnectionsPerResponder())
+                .disableCookieManagement()
+                .build();
+        httpClient.start();
+        return httpClient;
+    }
+
+    @Bean
+    public OCSPResponseCache ocspResponseCache(OCSPProperties properties, SharedCache sharedCache,
+                                               ExtractionMetrics extractionMetrics) {
+        return new OCSPResponseCache(properties.getCache().getMaxSize(), properties.getCache().getMaxAge(),
+                sharedCache, extractionMetrics);
+    }
+
+    @Bean
+    public HotCertificates hotCertificates(OCSPProperties properties, ExtractionMetrics extractionMetrics) {
+        OCSPProperties.Refresh refresh = properties.getRefresh();
+        HotCertificates hotCertificates = new HotCertificates(refresh.isEnabled() ? refresh.getHotSetSize() : 0);
+        extractionMetrics.monitor(hotCertificates);
+        return hotCertificates;
+    }
+
+    @Bean
+    public OCSPService ocspService(CloseableHttpAsyncClient ocspHttpClient, OCSPResponseCache ocspResponseCache,
+                                   OCSPProperties properties, ExtractionMetrics extractionMetrics,
+                                   HotCertificates hotCertificates) {
+        return new OCSPService(ocspHttpClient, ocspResponseCache, properties, extractionMetrics, hotCertificates);
+    }
+
+    // caches are pre-warmed at startup even when beans are initialized lazily
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @Lazy(false)
+    public OCSPRefresher ocspRefresher(OCSPService ocspService, OCSPResponseCache ocspResponseCache,
+                                       CertificateCache certificateCache, HotCertificates hotCertificates,
+                                       OCSPProperties properties, ExtractionMetrics extractionMetrics) {
+        return new OCSPRefresher(ocspService, ocspResponseCache, certificateCache, hotCertificates, properties,
+                extractionMetrics);
+    }
+}
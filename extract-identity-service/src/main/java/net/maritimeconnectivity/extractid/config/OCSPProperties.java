@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "extractid.ocsp")
+public class OCSPProperties {
+
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration readTimeout = Duration.ofSeconds(10);
+
+    // number of OCSP requests that may be outstanding towards a single responder before new ones are rejected
+    private int maxInFlightPerResponder = 64;
+
+    private int maxConnections = 200;
+    private int maxConnectionsPerResponder = 32;
+
+    // overrides of the settings above for individual responders, keyed by responder host name
+    private Map<String, Responder> responders = new HashMap<>();
+
+    private Cache cache = new Cache();
+
+    private Batch batch = new Batch();
+
+    private Refresh refresh = new Refresh();
+
+    private Prewarm prewarm = new Prewarm();
+
+    @Getter
+    @Setter
+    public static class Responder {
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private Integer maxInFlight;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        // maximum number of OCSP responses that are kept in memory
+        private long maxSize = 100000;
+
+        // how long a response without nextUpdate is considered valid
+        private Duration maxAge = Duration.ofHours(1);
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+        // maximum number of certificates asked about in one OCSP request
+        private int maxRequestsPerQuery = 100;
+
+        // number of batch OCSP requests that are sent to the same responder at the same time
+        private int parallelQueriesPerResponder = 4;
+    }
+
+    @Getter
+    @Setter
+    public static class Refresh {
+        // whether the responses of the most often checked certificates are renewed before they expire
+        private boolean enabled = true;
+
+        // number of most often checked certificates whose responses are renewed
+        private int hotSetSize = 1000;
+
+        // how often the cached responses of the hot certificates are looked at
+        private Duration interval = Duration.ofSeconds(30);
+
+        // a response is renewed when it expires within this time
+        private Duration beforeExpiry = Duration.ofMinutes(5);
+    }
+
+    @Getter
+    @Setter
+    public static class Prewarm {
+        // PEM files with a certificate followed by the certificate of its issuer, whose identities and
+        // OCSP responses are loaded at startup and whose responses are always renewed
+        private List<String> certificates = new ArrayList<>();
+
+        // how long startup waits for the OCSP responses of these certificates
+        private Duration timeout = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "extractid.request")
+public class RequestSizeProperties {
+
+    // largest request body accepted by the single certificate endpoints
+    private DataSize maxBodySize = DataSize.ofKilobytes(64);
+
+    // largest request body accepted by the batch endpoints
+    private DataSize maxBatchBodySize = DataSize.ofMegabytes(64);
+
+    // largest request body accepted by the streaming endpoints, which read their input incrementally
+    private DataSize maxStreamBodySize = DataSize.ofGigabytes(1);
+}
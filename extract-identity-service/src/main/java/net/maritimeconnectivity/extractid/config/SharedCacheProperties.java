@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "extractid.cache.shared")
+public class SharedCacheProperties {
+
+    public enum Type { NONE, FILE, REDIS }
+
+    // where OCSP responses are kept besides memory
+    private Type type = Type.NONE;
+
+    private final File file = new File();
+
+    private final Redis redis = new Redis();
+
+    @Getter
+    @Setter
+    public static class File {
+
+        // memory-mapped file that is kept across restarts
+        private Path path = Paths.get("extractid-cache.dat");
+
+        private DataSize maxSize = DataSize.ofMegabytes(256);
+    }
+
+    @Getter
+    @Setter
+    public static class Redis {
+
+        private URI url = URI.create("redis://localhost:6379");
+
+        // how long to wait for the server before going on without it
+        private Duration timeout = Duration.ofMillis(200);
+
+        private String keyPrefix = "extractid:";
+    }
+}
@@ -18,6 +18,7 @@ package net.maritimeconnectivity.extractid.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import springfox.documentation.builders.ApiInfoBuilder;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -28,7 +29,9 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+// the API documentation is left out of the prod profile since scanning for it slows down startup
 @Configuration
+@Profile("!prod")
 @EnableSwagger2
 @EnableOpenApi
 public class SwaggerConfig {
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.model.IntegratedCerts;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A training run starts the service, sends a few requests to it and stops it again. It is used when
+ * building a class data sharing archive, so the archive contains the classes needed to start the
+ * service and to answer requests. The requests extract the identity and the attributes of a bundled
+ * test certificate and check its revocation status with OCSP. The certificate has no OCSP responder
+ * URL, so the check is answered without the network, which may not be reachable while an image is built.
+ */
+@Configuration
+@ConditionalOnProperty(name = "extractid.startup.training-run", havingValue = "true")
+@Slf4j
+public class TrainingRunConfig {
+
+    private static final String PEM = "application/x-pem-file";
+    private static final String JSON = "application/json";
+
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> trainingRunExit() {
+        return event -> {
+            ConfigurableApplicationContext context = event.getApplicationContext();
+            if (context instanceof WebServerApplicationContext) {
+                warmUp(((WebServerApplicationContext) context).getWebServer().getPort());
+            }
+            log.info("Training run finished, stopping");
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+
+    private static void warmUp(int port) {
+        IntegratedCerts certs = new IntegratedCerts();
+        byte[] ocspRequest;
+        try {
+            certs.setCertificate(readResource("training-run/certificate.pem"));
+            certs.setIssuerCertificate(readResource("training-run/issuer.pem"));
+            ocspRequest = new ObjectMapper().writeValueAsBytes(certs);
+        } catch (IOException e) {
+            log.warn("Could not read the training run certificates", e);
+            return;
+        }
+        byte[] pemCert = certs.getCertificate().getBytes(StandardCharsets.US_ASCII);
+        post(port, "/api/extract/mcp", PEM, pemCert);
+        post(port, "/api/extract/x509", PEM, pemCert);
+        post(port, "/api/extract/ocsp", JSON, ocspRequest);
+    }
+
+    private static String readResource(String path) throws IOException {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static void post(int port, String path, String contentType, byte[] body) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path)
+                    .openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", contentType);
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            // read the answer as well, so the classes that write it are recorded
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    StreamUtils.drain(in);
+                }
+            }
+            log.info("Warm-up request to {} answered with {}", path, status);
+            connection.disconnect();
+        } catch (IOException e) {
+            log.warn("Warm-up request to {} failed", path, e);
+        }
+    }
+}
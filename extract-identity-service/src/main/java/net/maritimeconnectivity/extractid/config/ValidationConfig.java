@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.services.ChainValidator;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(ValidationProperties.class)
+@Slf4j
+public class ValidationConfig {
+
+    @Bean
+    public ChainValidator chainValidator(ValidationProperties properties, ExtractionMetrics extractionMetrics)
+            throws IOException, GeneralSecurityException {
+        List<X509Certificate> trustAnchors = properties.getTrustStore() == null ? Collections.emptyList()
+                : loadTrustStore(properties);
+        List<X509Certificate> intermediates = new ArrayList<>();
+        for (String location : properties.getIntermediates()) {
+            try (InputStream in = Files.newInputStream(Paths.get(location))) {
+                for (Certificate cert : CertificateFactory.getInstance("X.509").generateCertificates(in)) {
+                    intermediates.add((X509Certificate) cert);
+                }
+            }
+        }
+        log.info("Loaded {} trust anchors and {} intermediate certificates", trustAnchors.size(), intermediates.size());
+        return new ChainValidator(trustAnchors, intermediates, properties.getSignatureCacheSize(),
+                properties.getMaxPathLength(), properties.getMaxIntermediates(), properties.getMaxIssuerChecks(),
+                extractionMetrics);
+    }
+
+    /**
+     * Loads every trusted certificate entry of the trust store, like the JDK does for PKIX validation
+     */
+    private static List<X509Certificate> loadTrustStore(ValidationProperties properties)
+            throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(properties.getTrustStoreType());
+        char[] password = properties.getTrustStorePassword() == null ? null
+                : properties.getTrustStorePassword().toCharArray();
+        try (InputStream in = Files.newInputStream(Paths.get(properties.getTrustStore()))) {
+            keyStore.load(in, password);
+        }
+        List<X509Certificate> trustAnchors = new ArrayList<>();
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (keyStore.isCertificateEntry(alias) && keyStore.getCertificate(alias) instanceof X509Certificate) {
+                trustAnchors.add((X509Certificate) keyStore.getCertificate(alias));
+            }
+        }
+        return trustAnchors;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "extractid.validation")
+public class ValidationProperties {
+
+    // path of the trust store with the trusted root certificates, validation is not offered without one
+    private String trustStore;
+    private String trustStorePassword;
+    private String trustStoreType = "JKS";
+
+    // PEM files with intermediate certificates that clients do not have to send along
+    private List<String> intermediates = new ArrayList<>();
+
+    // number of verified (issuer, certificate) signatures that are remembered
+    private long signatureCacheSize = 100000;
+
+    private int maxPathLength = 8;
+
+    // number of intermediate certificates a request can send along with the validated certificate
+    private int maxIntermediates = 16;
+
+    // number of candidate issuers that are checked before the search for a path gives up
+    private int maxIssuerChecks = 1000;
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.maritimeconnectivity.extractid.filters.LoadSheddingInterceptor;
+import net.maritimeconnectivity.extractid.filters.RequestSizeLimitFilter;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.services.AdaptiveConcurrencyLimiter;
+import net.maritimeconnectivity.extractid.services.ClientRateLimiter;
+import net.maritimeconnectivity.extractid.services.TlsSessionCache;
+import net.maritimeconnectivity.extractid.utils.ProtobufSchemaHttpMessageConverter;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@EnableConfigurationProperties({RequestSizeProperties.class, LoadSheddingProperties.class})
+public class WebConfig implements WebMvcConfigurer {
+
+    private final LoadSheddingProperties loadSheddingProperties;
+    private final TlsSessionCache tlsSessionCache;
+    private final ExtractionMetrics extractionMetrics;
+
+    public WebConfig(LoadSheddingProperties loadSheddingProperties, TlsSessionCache tlsSessionCache,
+                     ExtractionMetrics extractionMetrics) {
+        this.loadSheddingProperties = loadSheddingProperties;
+        this.tlsSessionCache = tlsSessionCache;
+        this.extractionMetrics = extractionMetrics;
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestSizeLimitFilter> requestSizeLimitFilter(RequestSizeProperties properties,
+                                                                               ObjectMapper objectMapper,
+                                                                               ExtractionMetrics extractionMetrics) {
+        FilterRegistrationBean<RequestSizeLimitFilter> registration = new FilterRegistrationBean<>(
+                new RequestSizeLimitFilter(properties.getMaxBodySize().toBytes(),
+                        properties.getMaxBatchBodySize().toBytes(), properties.getMaxStreamBodySize().toBytes(),
+                        objectMapper, extractionMetrics));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(loadSheddingInterceptor()).addPathPatterns("/api/**");
+    }
+
+    @Bean
+    public LoadSheddingInterceptor loadSheddingInterceptor() {
+        LoadSheddingProperties properties = loadSheddingProperties;
+        AdaptiveConcurrencyLimiter extractionLimiter = null;
+        AdaptiveConcurrencyLimiter ocspLimiter = null;
+        if (properties.isEnabled()) {
+            extractionLimiter = createLimiter(properties.getExtraction());
+            ocspLimiter = createLimiter(properties.getOcsp());
+            extractionMetrics.monitor(extractionLimiter, LoadSheddingInterceptor.EXTRACTION);
+            extractionMetrics.monitor(ocspLimiter, LoadSheddingInterceptor.OCSP);
+        }
+        LoadSheddingProperties.Rate rate = properties.getRate();
+        ClientRateLimiter rateLimiter = rate.getRequestsPerSecond() > 0
+                ? new ClientRateLimiter(rate.getRequestsPerSecond(), rate.getBurst()) : null;
+        return new LoadSheddingInterceptor(extractionLimiter, ocspLimiter, rateLimiter, tlsSessionCache,
+                extractionMetrics);
+    }
+
+    private static AdaptiveConcurrencyLimiter createLimiter(LoadSheddingProperties.Concurrency concurrency) {
+        return new AdaptiveConcurrencyLimiter(concurrency.getInitialLimit(), concurrency.getMinLimit(),
+                concurrency.getMaxLimit(), concurrency.getLatencyThreshold().toNanos());
+    }
+
+    /**
+     * Writes the results as CBOR for clients that ask for application/cbor, with the same Jackson
+     * settings as the JSON responses
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.createXmlMapper(false).factory(new CBORFactory()).build());
+    }
+
+    /**
+     * Writes the results as Protobuf for clients that ask for application/x-protobuf
+     */
+    @Bean
+    public ProtobufSchemaHttpMessageConverter protobufSchemaHttpMessageConverter() {
+        return new ProtobufSchemaHttpMessageConverter();
+    }
+}
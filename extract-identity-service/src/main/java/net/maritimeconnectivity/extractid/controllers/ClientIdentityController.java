@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import net.maritimeconnectivity.extractid.exceptions.MCPBasicRestException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Rejection;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.extractid.services.ParsedCertificate;
+import net.maritimeconnectivity.extractid.services.TlsSessionCache;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static net.maritimeconnectivity.extractid.utils.ProtobufSchemaHttpMessageConverter.PROTOBUF_VALUE;
+
+/**
+ * Answers with the identity of the calling client, taken from the certificate it presented in the
+ * mutual TLS handshake
+ */
+@RestController
+@RequestMapping("/api")
+public class ClientIdentityController {
+
+    private static final String CLIENT_CERTIFICATE_WARNING = "The request was not made over TLS with a client certificate";
+
+    private final CertificateRequestSupport support;
+    private final TlsSessionCache tlsSessionCache;
+    private final ExtractionMetrics metrics;
+
+    public ClientIdentityController(CertificateRequestSupport support, TlsSessionCache tlsSessionCache,
+                                    ExtractionMetrics metrics) {
+        this.support = support;
+        this.tlsSessionCache = tlsSessionCache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the PKI Identity of the calling client, taken from the certificate it presented in the mutual
+     * TLS handshake, so nothing has to be sent. The identity is cached for each TLS session, so requests on
+     * a resumed session are answered without extracting it again.
+     * @return the PKI Identity within the client certificate
+     */
+    @RequestMapping(
+            value = "/extract/mcp/client",
+            method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE}
+    )
+    public ResponseEntity<PKIIdentity> extractClientIdentity(HttpServletRequest request) throws MCPBasicRestException {
+        // the answer depends on the connection, not on the URL
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore())
+                .body(getClientCertificate(request).getIdentity());
+    }
+
+    /**
+     * Returns the X.509 certificate attributes of the certificate the calling client presented in the mutual
+     * TLS handshake
+     * @param fields optional fields to add to the default ones
+     * @return       the certificate attributes
+     */
+    @RequestMapping(
+            value = "/extract/x509/client",
+            method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE}
+    )
+    public ResponseEntity<X509CertAttribute> extractClientCertAttributes(HttpServletRequest request,
+                                                                         @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException {
+        support.checkFields(request, fields);
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore())
+                .body(CertificateRequestSupport.getAttributes(getClientCertificate(request), fields));
+    }
+
+    /**
+     * @return the client certificate of the TLS connection the request was made on
+     */
+    private ParsedCertificate getClientCertificate(HttpServletRequest request) throws MCPBasicRestException {
+        X509Certificate[] chain = (X509Certificate[]) request.getAttribute(TlsSessionCache.CLIENT_CERTIFICATE_ATTRIBUTE);
+        if (chain == null || chain.length == 0) {
+            throw new MCPBasicRestException(HttpStatus.UNAUTHORIZED, CLIENT_CERTIFICATE_WARNING, request.getServletPath());
+        }
+        ParsedCertificate parsed = tlsSessionCache.get(
+                (String) request.getAttribute(TlsSessionCache.SESSION_ID_ATTRIBUTE), chain[0]);
+        if (parsed == null) {
+            metrics.reject(Rejection.INVALID_CERTIFICATE);
+            throw new MCPBasicRestException(HttpStatus.BAD_REQUEST, CLIENT_CERTIFICATE_WARNING, request.getServletPath());
+        }
+        return parsed;
+    }
+}
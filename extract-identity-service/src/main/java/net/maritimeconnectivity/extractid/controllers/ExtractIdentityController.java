@@ -0,0 +1,455 @@
+/*
+ * Copyright 2017 Danish Maritime Authority
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.exceptions.MCPBasicRestException;
+import net.maritimeconnectivity.extractid.exceptions.RequestTooLargeException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Rejection;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Stage;
+import net.maritimeconnectivity.extractid.model.BatchResult;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.extractid.services.CertificateCache;
+import net.maritimeconnectivity.extractid.services.ParsedCertificate;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.extractid.utils.DerCertificateReader;
+import net.maritimeconnectivity.extractid.utils.PemBlockReader;
+import net.maritimeconnectivity.extractid.utils.Pkcs12CertificateReader;
+import net.maritimeconnectivity.extractid.utils.Pkcs7CertificateReader;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.DER_NOT_VALID_WARNING;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.NOT_VALID_WARNING;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.PEM_VALUE;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.PKIX_CERT_VALUE;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.getAttributes;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.getCacheControl;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.readBody;
+import static net.maritimeconnectivity.extractid.utils.ProtobufSchemaHttpMessageConverter.PROTOBUF_VALUE;
+
+/**
+ * Extracts the PKI Identity and the X.509 attributes of certificates sent in the request, one at a
+ * time, in batches or streamed
+ */
+@RestController
+@RequestMapping("/api")
+@Slf4j
+public class ExtractIdentityController {
+
+    private static final String PKCS7_MIME_VALUE = "application/pkcs7-mime";
+    private static final String PKCS7_CERTIFICATES_VALUE = "application/x-pkcs7-certificates";
+    private static final String PKCS12_VALUE = "application/pkcs12";
+    private static final String X_PKCS12_VALUE = "application/x-pkcs12";
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String PKCS12_PASSWORD_HEADER = "X-PKCS12-Password";
+    // far larger than any certificate, longer PEM blocks are cut off and reported as invalid
+    private static final int MAX_PEM_BLOCK_LENGTH = 64 * 1024;
+
+    private final CertificateRequestSupport support;
+    private final CertificateCache certificateCache;
+    private final ExtractionMetrics metrics;
+    private final ObjectMapper objectMapper;
+    private final int maxBatchSize;
+
+    public ExtractIdentityController(CertificateRequestSupport support, CertificateCache certificateCache,
+                                     ExtractionMetrics metrics, ObjectMapper objectMapper,
+                                     @Value("${extractid.batch.max-size:1000}") int maxBatchSize) {
+        this.support = support;
+        this.certificateCache = certificateCache;
+        this.metrics = metrics;
+        this.objectMapper = objectMapper;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Takes a PEM certificate and returns the PKI Identity of the entity within the certificate
+     * @param pemCert the PEM certificate as a string
+     * @return        the PKI Identity within the certificate
+     */
+    @RequestMapping(
+            value = "/extract/mcp",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = "application/x-pem-file"
+    )
+    public ResponseEntity<PKIIdentity> extractIdentityFromCert(HttpServletRequest request, HttpServletResponse response,
+                                                               @RequestBody String pemCert)
+            throws MCPBasicRestException {
+        byte[] der = support.decodePem(request, pemCert, NOT_VALID_WARNING);
+        return extractCacheable(request, response, der, Rejection.INVALID_CERTIFICATE, NOT_VALID_WARNING,
+                null, ParsedCertificate::getIdentity);
+    }
+
+    /**
+     * Takes a DER certificate and returns the PKI Identity of the entity within the certificate
+     * @return the PKI Identity within the certificate
+     */
+    @RequestMapping(
+            value = "/extract/mcp",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = {PKIX_CERT_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE}
+    )
+    public ResponseEntity<PKIIdentity> extractIdentityFromDerCert(HttpServletRequest request, HttpServletResponse response)
+            throws MCPBasicRestException, IOException {
+        return extractCacheable(request, response, readBody(request), Rejection.INVALID_DER, DER_NOT_VALID_WARNING,
+                null, ParsedCertificate::getIdentity);
+    }
+
+    /**
+     * Takes a DER certificate given in the URL and returns the PKI Identity of the entity within the certificate.
+     * The answer can be stored by HTTP caches, and a request with a matching If-None-Match header is answered
+     * with 304 without looking at the certificate.
+     * @param certificate the base64url encoded DER certificate
+     * @return            the PKI Identity within the certificate
+     */
+    @RequestMapping(
+            value = "/extract/mcp",
+            method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE}
+    )
+    public ResponseEntity<PKIIdentity> extractIdentityFromUrl(HttpServletRequest request, HttpServletResponse response,
+                                                              @RequestParam("certificate") String certificate)
+            throws MCPBasicRestException {
+        return extractCacheable(request, response, support.decodeParameter(request, certificate), Rejection.INVALID_DER,
+                DER_NOT_VALID_WARNING, null, ParsedCertificate::getIdentity);
+    }
+
+    /**
+     * Takes a PEM certificate and returns the X.509 certificate attributes
+     * @param pemCert the PEM certificate as a string
+     * @param fields  optional fields to add to the default ones
+     * @return        the certificate attributes
+     */
+    @RequestMapping(
+            value = "/extract/x509",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = "application/x-pem-file"
+    )
+    public ResponseEntity<X509CertAttribute> extractCertAttributes(HttpServletRequest request, HttpServletResponse response,
+                                                                   @RequestBody String pemCert,
+                                                                   @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException {
+        support.checkFields(request, fields);
+        byte[] der = support.decodePem(request, pemCert, NOT_VALID_WARNING);
+        return extractCacheable(request, response, der, Rejection.INVALID_CERTIFICATE, NOT_VALID_WARNING,
+                fields, parsed -> getAttributes(parsed, fields));
+    }
+
+    /**
+     * Takes a DER certificate and returns the X.509 certificate attributes
+     * @param fields optional fields to add to the default ones
+     * @return       the certificate attributes
+     */
+    @RequestMapping(
+            value = "/extract/x509",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = {PKIX_CERT_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE}
+    )
+    public ResponseEntity<X509CertAttribute> extractCertAttributesFromDerCert(HttpServletRequest request,
+                                                                              HttpServletResponse response,
+                                                                              @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException, IOException {
+        support.checkFields(request, fields);
+        return extractCacheable(request, response, readBody(request), Rejection.INVALID_DER, DER_NOT_VALID_WARNING,
+                fields, parsed -> getAttributes(parsed, fields));
+    }
+
+    /**
+     * Takes a DER certificate given in the URL and returns the X.509 certificate attributes. The answer can
+     * be stored by HTTP caches, and a request with a matching If-None-Match header is answered with 304
+     * without looking at the certificate.
+     * @param certificate the base64url encoded DER certificate
+     * @param fields      optional fields to add to the default ones
+     * @return            the certificate attributes
+     */
+    @RequestMapping(
+            value = "/extract/x509",
+            method = RequestMethod.GET,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE}
+    )
+    public ResponseEntity<X509CertAttribute> extractCertAttributesFromUrl(HttpServletRequest request,
+                                                                          HttpServletResponse response,
+                                                                          @RequestParam("certificate") String certificate,
+                                                                          @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException {
+        support.checkFields(request, fields);
+        return extractCacheable(request, response, support.decodeParameter(request, certificate), Rejection.INVALID_DER,
+                DER_NOT_VALID_WARNING, fields, parsed -> getAttributes(parsed, fields));
+    }
+
+    /**
+     * Takes a bundle of PEM certificates and returns the PKI Identity of each of them
+     * @param pemBundle the concatenated PEM certificates as a string
+     * @return          a result or an error for each certificate in the bundle, in the order they were given
+     */
+    @RequestMapping(
+            value = "/extract/mcp/batch",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = "application/x-pem-file"
+    )
+    public ResponseEntity<List<BatchResult<PKIIdentity>>> extractIdentitiesFromBundle(HttpServletRequest request,
+                                                                                      @RequestBody String pemBundle)
+            throws MCPBasicRestException {
+        return extractIdentitiesFromCerts(request, CertificateUtils.splitPemBundle(pemBundle));
+    }
+
+    /**
+     * Takes a list of PEM certificates and returns the PKI Identity of each of them
+     * @param pemCerts a JSON array of PEM certificates
+     * @return         a result or an error for each certificate in the list, in the order they were given
+     */
+    @RequestMapping(
+            value = "/extract/mcp/batch",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<BatchResult<PKIIdentity>>> extractIdentitiesFromCerts(HttpServletRequest request,
+                                                                                     @RequestBody List<String> pemCerts)
+            throws MCPBasicRestException {
+        return new ResponseEntity<>(extractBatch(request, pemCerts, ParsedCertificate::getIdentity), HttpStatus.OK);
+    }
+
+    /**
+     * Takes a bundle of PEM certificates and returns the X.509 certificate attributes of each of them
+     * @param pemBundle the concatenated PEM certificates as a string
+     * @param fields    optional fields to add to the default ones
+     * @return          a result or an error for each certificate in the bundle, in the order they were given
+     */
+    @RequestMapping(
+            value = "/extract/x509/batch",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = "application/x-pem-file"
+    )
+    public ResponseEntity<List<BatchResult<X509CertAttribute>>> extractCertAttributesFromBundle(HttpServletRequest request,
+                                                                                                @RequestBody String pemBundle,
+                                                                                                @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException {
+        return extractCertAttributesFromCerts(request, CertificateUtils.splitPemBundle(pemBundle), fields);
+    }
+
+    /**
+     * Takes a list of PEM certificates and returns the X.509 certificate attributes of each of them
+     * @param pemCerts a JSON array of PEM certificates
+     * @param fields   optional fields to add to the default ones
+     * @return         a result or an error for each certificate in the list, in the order they were given
+     */
+    @RequestMapping(
+            value = "/extract/x509/batch",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<List<BatchResult<X509CertAttribute>>> extractCertAttributesFromCerts(HttpServletRequest request,
+                                                                                               @RequestBody List<String> pemCerts,
+                                                                                               @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException {
+        support.checkFields(request, fields);
+        return new ResponseEntity<>(extractBatch(request, pemCerts, parsed -> getAttributes(parsed, fields)),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Takes a bundle of PEM certificates, a PKCS#7 bundle or a PKCS#12 file of any size and writes
+     * the PKI Identity of each certificate as a line of JSON as soon as the certificate has been read.
+     * The password of a PKCS#12 file is given in the X-PKCS12-Password header.
+     */
+    @RequestMapping(
+            value = "/extract/mcp/stream",
+            method = RequestMethod.POST,
+            produces = NDJSON_VALUE,
+            consumes = {PEM_VALUE, PKCS7_MIME_VALUE, PKCS7_CERTIFICATES_VALUE, PKCS12_VALUE, X_PKCS12_VALUE}
+    )
+    public void streamIdentities(HttpServletRequest request, HttpServletResponse response,
+                                 @RequestHeader(value = PKCS12_PASSWORD_HEADER, required = false) String password)
+            throws IOException {
+        streamBatch(request, response, password, ParsedCertificate::getIdentity);
+    }
+
+    /**
+     * Takes a bundle of PEM certificates, a PKCS#7 bundle or a PKCS#12 file of any size and writes
+     * the X.509 attributes of each certificate as a line of JSON as soon as the certificate has been read.
+     * The password of a PKCS#12 file is given in the X-PKCS12-Password header.
+     * @param fields optional fields to add to the default ones
+     */
+    @RequestMapping(
+            value = "/extract/x509/stream",
+            method = RequestMethod.POST,
+            produces = NDJSON_VALUE,
+            consumes = {PEM_VALUE, PKCS7_MIME_VALUE, PKCS7_CERTIFICATES_VALUE, PKCS12_VALUE, X_PKCS12_VALUE}
+    )
+    public void streamCertAttributes(HttpServletRequest request, HttpServletResponse response,
+                                     @RequestHeader(value = PKCS12_PASSWORD_HEADER, required = false) String password,
+                                     @RequestParam(value = "fields", required = false) List<String> fields)
+            throws MCPBasicRestException, IOException {
+        support.checkFields(request, fields);
+        streamBatch(request, response, password, parsed -> getAttributes(parsed, fields));
+    }
+
+    /**
+     * Answers with what is extracted from a certificate, with a strong ETag made from the certificate's
+     * fingerprint, the requested optional fields and the requested format, and a Cache-Control header that lets the answer be kept until
+     * the certificate expires.
+     * What is extracted from a certificate never changes, so a request with a matching If-None-Match
+     * header is answered before the certificate is parsed: with 304 for GET, and with 412 for POST as
+     * HTTP requires for other methods.
+     * @param fields the optional fields that are extracted, or null
+     * @return       the answer, or null if the response has already been given
+     */
+    private <T> ResponseEntity<T> extractCacheable(HttpServletRequest request, HttpServletResponse response, byte[] der,
+                                                   Rejection rejection, String warning, List<String> fields,
+                                                   Function<ParsedCertificate, T> extractor)
+            throws MCPBasicRestException {
+        String fingerprint = CertificateUtils.sha256Fingerprint(der);
+        String format = getBinaryFormat(request);
+        // the fields are sorted, so the order they are asked for in does not change the ETag
+        String fieldList = fields == null || fields.isEmpty() ? "" : "-" + String.join(",", new TreeSet<>(fields));
+        String etag = '"' + fingerprint + fieldList + (format == null ? "" : "-" + format) + '"';
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return null;
+        }
+
+        ParsedCertificate parsed = der.length == 0 ? null : certificateCache.get(fingerprint, der);
+        if (parsed == null) {
+            metrics.reject(rejection);
+            throw new MCPBasicRestException(HttpStatus.BAD_REQUEST, warning, request.getServletPath());
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .cacheControl(getCacheControl(parsed.getCertificate().getNotAfter()).cachePublic())
+                .body(extractor.apply(parsed));
+    }
+
+    /**
+     * Finds the format an answer will be written in, the same way the message converters are chosen
+     * @return cbor or protobuf, or null for JSON
+     */
+    private static String getBinaryFormat(HttpServletRequest request) {
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(request.getHeader(HttpHeaders.ACCEPT));
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            } else if (mediaType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return "cbor";
+            } else if (mediaType.isCompatibleWith(MediaType.valueOf(PROTOBUF_VALUE))) {
+                return "protobuf";
+            }
+        }
+        return null;
+    }
+
+    private <T> List<BatchResult<T>> extractBatch(HttpServletRequest request, List<String> pemCerts,
+                                                  Function<ParsedCertificate, T> extractor)
+            throws MCPBasicRestException {
+        support.checkBatchSize(request, pemCerts.size(), maxBatchSize);
+        // every certificate is handled on its own so one bad input only fails its own item
+        return IntStream.range(0, pemCerts.size())
+                .parallel()
+                .mapToObj(i -> support.extractBatchItem(i, pemCerts.get(i), NOT_VALID_WARNING, extractor))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the certificates of the request body one at a time and writes the result for each of them
+     * as a line of JSON. The response is sent in chunks as the results are written, so neither the
+     * input nor the output is held in memory, except for PKCS#12 files which can only be read as a whole.
+     */
+    private <T> void streamBatch(HttpServletRequest request, HttpServletResponse response, String pkcs12Password,
+                                 Function<ParsedCertificate, T> extractor) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        response.setContentType(NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        int index = 0;
+        try (InputStream in = request.getInputStream()) {
+            if (MediaType.valueOf(PEM_VALUE).includes(contentType)) {
+                PemBlockReader reader = new PemBlockReader(new InputStreamReader(in, StandardCharsets.US_ASCII),
+                        MAX_PEM_BLOCK_LENGTH);
+                for (String pemCert = reader.next(); pemCert != null; pemCert = reader.next()) {
+                    writeLine(out, support.extractBatchItem(index++, pemCert, NOT_VALID_WARNING, extractor));
+                }
+            } else {
+                DerCertificateReader reader = isPkcs12(contentType)
+                        ? new Pkcs12CertificateReader(in, pkcs12Password == null ? new char[0] : pkcs12Password.toCharArray())
+                        : new Pkcs7CertificateReader(in);
+                for (byte[] der = reader.next(); der != null; der = reader.next()) {
+                    byte[] item = der;
+                    writeLine(out, support.extractBatchItem(index++, () -> certificateCache.get(item), Rejection.INVALID_DER,
+                            DER_NOT_VALID_WARNING, extractor));
+                }
+            }
+        } catch (IOException e) {
+            if (e instanceof RequestTooLargeException && !response.isCommitted()) {
+                throw e;
+            }
+            // the status may already have been sent, so the stream ends with an item saying why it stopped
+            log.debug("Streamed input could not be read", e);
+            writeLine(out, new BatchResult<>(index, null, "The rest of the input could not be read: " + e.getMessage()));
+        }
+    }
+
+    private static boolean isPkcs12(MediaType contentType) {
+        return MediaType.valueOf(PKCS12_VALUE).includes(contentType) || MediaType.valueOf(X_PKCS12_VALUE).includes(contentType);
+    }
+
+    private void writeLine(OutputStream out, BatchResult<?> item) throws IOException {
+        long start = System.nanoTime();
+        out.write(objectMapper.writeValueAsBytes(item));
+        out.write('\n');
+        metrics.recordStage(Stage.JSON_WRITE, start);
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.exceptions.MCPBasicRestException;
+import net.maritimeconnectivity.extractid.exceptions.OCSPResponderBusyException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Rejection;
+import net.maritimeconnectivity.extractid.model.BatchResult;
+import net.maritimeconnectivity.extractid.model.CRLResult;
+import net.maritimeconnectivity.extractid.model.IntegratedCerts;
+import net.maritimeconnectivity.extractid.model.OCSPResult;
+import net.maritimeconnectivity.extractid.model.ValidationResult;
+import net.maritimeconnectivity.extractid.services.CRLStore;
+import net.maritimeconnectivity.extractid.services.ChainValidator;
+import net.maritimeconnectivity.extractid.services.OCSPCheck;
+import net.maritimeconnectivity.extractid.services.OCSPService;
+import net.maritimeconnectivity.extractid.services.ParsedCertificate;
+import net.maritimeconnectivity.extractid.services.ValidatedChain;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.ISSUER_NOT_VALID_WARNING;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.NOT_VALID_WARNING;
+import static net.maritimeconnectivity.extractid.controllers.CertificateRequestSupport.PKIX_CERT_VALUE;
+import static net.maritimeconnectivity.extractid.utils.ProtobufSchemaHttpMessageConverter.PROTOBUF_VALUE;
+
+/**
+ * Checks whether certificates can be trusted, by their revocation status and by the path to a trust anchor
+ */
+@RestController
+@RequestMapping("/api")
+@Slf4j
+public class ValidationController {
+
+    private static final String REVOCATION_NONE = "none";
+    private static final String REVOCATION_OCSP = "ocsp";
+    private static final String REVOCATION_CRL = "crl";
+    private static final String OCSP_RESPONSE_WARNING = "The ocspResponse must be a base64 encoded DER OCSP response";
+
+    private final CertificateRequestSupport support;
+    private final OCSPService ocspService;
+    private final CRLStore crlStore;
+    private final ChainValidator chainValidator;
+    private final ExtractionMetrics metrics;
+    private final int maxOcspBatchSize;
+
+    public ValidationController(CertificateRequestSupport support, OCSPService ocspService, CRLStore crlStore,
+                                ChainValidator chainValidator, ExtractionMetrics metrics,
+                                @Value("${extractid.batch.ocsp-max-size:50000}") int maxOcspBatchSize) {
+        this.support = support;
+        this.ocspService = ocspService;
+        this.crlStore = crlStore;
+        this.chainValidator = chainValidator;
+        this.metrics = metrics;
+        this.maxOcspBatchSize = maxOcspBatchSize;
+    }
+
+    /**
+     * Checks the revocation status of a certificate and its issuer using OCSP. If an OCSP response for the
+     * certificate is given, for example one stapled in a TLS handshake, it is verified locally and the
+     * responder is only asked if the response is not valid or stale.
+     * @param integratedCerts a JSON object containing the PEM encoded certificate, the issuer certificate
+     *                        and optionally a base64 encoded OCSP response
+     * @return                the revocation status, once the OCSP responder has answered
+     */
+    @RequestMapping(
+            value = "/extract/ocsp",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    public CompletableFuture<ResponseEntity<OCSPResult>> checkOCSP(HttpServletRequest request,
+                                                                   @RequestBody IntegratedCerts integratedCerts)
+            throws MCPBasicRestException {
+        String pemCert = integratedCerts.getCertificate();
+        String pemCertSubCA = integratedCerts.getIssuerCertificate();
+
+        X509Certificate cert = support.parseCertificate(request, pemCert, NOT_VALID_WARNING).getCertificate();
+        X509Certificate issuerCert = support.parseCertificate(request, pemCertSubCA, ISSUER_NOT_VALID_WARNING)
+                .getCertificate();
+        byte[] ocspResponse = decodeOcspResponse(integratedCerts.getOcspResponse());
+        if (ocspResponse == null && integratedCerts.getOcspResponse() != null) {
+            throw new MCPBasicRestException(HttpStatus.BAD_REQUEST, OCSP_RESPONSE_WARNING, request.getServletPath());
+        }
+
+        // the servlet thread is released while waiting for the responder
+        return ocspService.checkStatuses(Collections.singletonList(new OCSPCheck(cert, issuerCert, ocspResponse))).get(0)
+                .thenApply(result -> ResponseEntity.ok().cacheControl(getCacheControl(result)).body(result));
+    }
+
+    /**
+     * Checks the revocation status of a certificate against the locally stored CRL of its issuer
+     * @param pemCert the PEM certificate as a string
+     * @return        the revocation status and the validity of the CRL it was found in
+     */
+    @RequestMapping(
+            value = "/extract/crl",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = "application/x-pem-file"
+    )
+    public ResponseEntity<CRLResult> checkCRL(HttpServletRequest request, @RequestBody String pemCert)
+            throws MCPBasicRestException {
+        return checkCRL(request, support.parseCertificate(request, pemCert, NOT_VALID_WARNING).getCertificate());
+    }
+
+    /**
+     * Checks the revocation status of a DER certificate against the locally stored CRL of its issuer
+     * @return the revocation status and the validity of the CRL it was found in
+     */
+    @RequestMapping(
+            value = "/extract/crl",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = {PKIX_CERT_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE}
+    )
+    public ResponseEntity<CRLResult> checkCRLOfDerCert(HttpServletRequest request)
+            throws MCPBasicRestException, IOException {
+        return checkCRL(request, support.parseDerCertificate(request).getCertificate());
+    }
+
+    private ResponseEntity<CRLResult> checkCRL(HttpServletRequest request, X509Certificate cert)
+            throws MCPBasicRestException {
+        CRLResult result = crlStore.checkStatus(cert);
+        if (result == null) {
+            throw new MCPBasicRestException(HttpStatus.NOT_FOUND,
+                    "No CRL is configured for the issuer of the certificate", request.getServletPath());
+        }
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Checks the revocation status of many certificates using OCSP. Certificates that share an OCSP
+     * responder are checked together in one request to that responder.
+     * @param integratedCerts a JSON array of objects containing a PEM encoded certificate and its issuer certificate
+     * @return                a result or an error for each certificate in the list, in the order they were given
+     */
+    @RequestMapping(
+            value = "/extract/ocsp/batch",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = MediaType.APPLICATION_JSON_VALUE
+    )
+    public CompletableFuture<ResponseEntity<List<BatchResult<OCSPResult>>>> checkOCSPBatch(HttpServletRequest request,
+                                                                                           @RequestBody List<IntegratedCerts> integratedCerts)
+            throws MCPBasicRestException {
+        support.checkBatchSize(request, integratedCerts.size(), maxOcspBatchSize);
+
+        List<BatchResult<OCSPResult>> results = new ArrayList<>(Collections.nCopies(integratedCerts.size(), null));
+        List<OCSPCheck> checks = new ArrayList<>();
+        List<Integer> checkIndexes = new ArrayList<>();
+        for (int i = 0; i < integratedCerts.size(); i++) {
+            IntegratedCerts item = integratedCerts.get(i);
+            BatchResult<X509Certificate> cert = support.extractBatchItem(i, item == null ? null : item.getCertificate(),
+                    NOT_VALID_WARNING, ParsedCertificate::getCertificate);
+            BatchResult<X509Certificate> issuerCert = support.extractBatchItem(i,
+                    item == null ? null : item.getIssuerCertificate(), ISSUER_NOT_VALID_WARNING,
+                    ParsedCertificate::getCertificate);
+            byte[] ocspResponse = item == null ? null : decodeOcspResponse(item.getOcspResponse());
+            if (cert.getError() != null || issuerCert.getError() != null) {
+                String error = cert.getError() != null ? cert.getError() : issuerCert.getError();
+                results.set(i, new BatchResult<>(i, null, error));
+            } else if (ocspResponse == null && item.getOcspResponse() != null) {
+                results.set(i, new BatchResult<>(i, null, OCSP_RESPONSE_WARNING));
+            } else {
+                checks.add(new OCSPCheck(cert.getResult(), issuerCert.getResult(), ocspResponse));
+                checkIndexes.add(i);
+            }
+        }
+
+        List<CompletableFuture<OCSPResult>> futures = ocspService.checkStatuses(checks);
+        CompletableFuture<?>[] items = new CompletableFuture<?>[futures.size()];
+        for (int j = 0; j < futures.size(); j++) {
+            int index = checkIndexes.get(j);
+            items[j] = futures.get(j).handle((result, e) -> {
+                results.set(index, e == null ? new BatchResult<>(index, result, null)
+                        : new BatchResult<>(index, null, getBatchErrorMessage(e)));
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(items).thenApply(v -> new ResponseEntity<>(results, HttpStatus.OK));
+    }
+
+    /**
+     * Validates a certificate by building a path to one of the configured trust anchors, and
+     * optionally checks the revocation status of every certificate on the path below the anchor
+     * @param pemBundle  the PEM certificate, optionally followed by intermediate certificates
+     * @param revocation none, ocsp or crl
+     * @return           whether the certificate is valid, and the chain that was found
+     */
+    @RequestMapping(
+            value = "/validate",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, PROTOBUF_VALUE},
+            consumes = "application/x-pem-file"
+    )
+    public CompletableFuture<ResponseEntity<ValidationResult>> validateCert(HttpServletRequest request,
+                                                                            @RequestBody String pemBundle,
+                                                                            @RequestParam(value = "revocation", defaultValue = REVOCATION_NONE) String revocation)
+            throws MCPBasicRestException {
+        if (!Arrays.asList(REVOCATION_NONE, REVOCATION_OCSP, REVOCATION_CRL).contains(revocation)) {
+            throw new MCPBasicRestException(HttpStatus.BAD_REQUEST, "Unknown revocation check, use "
+                    + REVOCATION_NONE + ", " + REVOCATION_OCSP + " or " + REVOCATION_CRL, request.getServletPath());
+        }
+        if (!chainValidator.hasTrustAnchors()) {
+            throw new MCPBasicRestException(HttpStatus.NOT_FOUND, "No trust store is configured", request.getServletPath());
+        }
+
+        List<String> pemCerts = CertificateUtils.splitPemBundle(pemBundle);
+        if (pemCerts.size() - 1 > chainValidator.getMaxIntermediates()) {
+            metrics.reject(Rejection.BATCH_TOO_LARGE);
+            throw new MCPBasicRestException(HttpStatus.PAYLOAD_TOO_LARGE, "At most "
+                    + chainValidator.getMaxIntermediates() + " intermediate certificates can be sent",
+                    request.getServletPath());
+        }
+        X509Certificate cert = support.parseCertificate(request, pemCerts.isEmpty() ? pemBundle : pemCerts.get(0),
+                NOT_VALID_WARNING).getCertificate();
+        List<X509Certificate> intermediates = new ArrayList<>();
+        for (String pemCert : pemCerts.subList(Math.min(1, pemCerts.size()), pemCerts.size())) {
+            intermediates.add(support.parseCertificate(request, pemCert, ISSUER_NOT_VALID_WARNING).getCertificate());
+        }
+
+        ValidatedChain validated = chainValidator.validate(cert, intermediates, new Date());
+        ValidationResult result = new ValidationResult();
+        result.setValid(validated.isValid());
+        result.setError(validated.getError());
+        result.setChain(validated.getChain().stream().map(ValidationResult.ChainElement::new).collect(Collectors.toList()));
+        if (validated.isValid()) {
+            result.setTrustAnchor(validated.getTrustAnchor().getSubjectX500Principal().getName());
+        }
+        if (!validated.isValid() || REVOCATION_NONE.equals(revocation)) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(result, HttpStatus.OK));
+        }
+
+        return checkRevocation(validated.getChain(), revocation).thenApply(statuses -> {
+            String combined = CertStatus.GOOD.toString();
+            for (int i = 0; i < statuses.size(); i++) {
+                String status = statuses.get(i);
+                result.getChain().get(i).setCertStatus(status);
+                if (CertStatus.REVOKED.toString().equals(status)) {
+                    combined = status;
+                } else if (!CertStatus.GOOD.toString().equals(status) && !CertStatus.REVOKED.toString().equals(combined)) {
+                    combined = CertStatus.UNKNOWN.toString();
+                }
+            }
+            result.setRevocationStatus(combined);
+            if (CertStatus.REVOKED.toString().equals(combined)) {
+                result.setValid(false);
+                result.setError("A certificate in the chain has been revoked");
+            }
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * @param ocspResponse a base64 encoded OCSP response, or null
+     * @return             the DER encoded response, or null if none was given or it is not valid base64
+     */
+    private byte[] decodeOcspResponse(String ocspResponse) {
+        if (ocspResponse == null) {
+            return null;
+        }
+        try {
+            // line breaks are allowed, as in the output of base64 and openssl
+            return Base64.getDecoder().decode(ocspResponse.replaceAll("\\s", ""));
+        } catch (IllegalArgumentException e) {
+            metrics.reject(Rejection.INVALID_OCSP_RESPONSE);
+            return null;
+        }
+    }
+
+    private static CacheControl getCacheControl(OCSPResult result) {
+        if (result.getNextUpdate() == null || CertStatus.UNKNOWN.toString().equals(result.getCertStatus())) {
+            return CacheControl.noCache();
+        }
+        return CertificateRequestSupport.getCacheControl(result.getNextUpdate());
+    }
+
+    /**
+     * Checks the revocation status of each certificate of a chain except the trust anchor
+     * @return the status of each checked certificate, in the order of the chain
+     */
+    private CompletableFuture<List<String>> checkRevocation(List<X509Certificate> chain, String revocation) {
+        int checked = chain.size() - 1;
+        if (REVOCATION_OCSP.equals(revocation)) {
+            List<OCSPCheck> checks = new ArrayList<>(checked);
+            for (int i = 0; i < checked; i++) {
+                checks.add(new OCSPCheck(chain.get(i), chain.get(i + 1)));
+            }
+            // as in the batch check, a busy or failing responder only makes the status of its certificate unknown
+            List<CompletableFuture<String>> futures = ocspService.checkStatuses(checks).stream()
+                    .map(future -> future.handle((result, e) -> {
+                        if (e != null) {
+                            log.debug("Revocation status in chain is unknown: {}", getBatchErrorMessage(e));
+                            return CertStatus.UNKNOWN.toString();
+                        }
+                        return result.getCertStatus();
+                    }))
+                    .collect(Collectors.toList());
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+        }
+        List<String> statuses = new ArrayList<>(checked);
+        for (int i = 0; i < checked; i++) {
+            CRLResult crlResult = crlStore.checkStatus(chain.get(i));
+            statuses.add(crlResult == null ? CertStatus.UNKNOWN.toString() : crlResult.getCertStatus());
+        }
+        return CompletableFuture.completedFuture(statuses);
+    }
+
+    private static String getBatchErrorMessage(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof OCSPResponderBusyException) {
+            return cause.getMessage();
+        }
+        log.warn("OCSP check of batch item failed", cause);
+        return "Could not check the revocation status of the certificate";
+    }
+}
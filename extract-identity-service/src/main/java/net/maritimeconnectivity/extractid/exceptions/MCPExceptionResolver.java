@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.exceptions;
+
+import net.maritimeconnectivity.extractid.model.ExceptionModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import javax.servlet.http.HttpServletRequest;
+
+@ControllerAdvice
+public class MCPExceptionResolver {
+
+    @ExceptionHandler(MCPBasicRestException.class)
+    public ResponseEntity<ExceptionModel> processRestError(MCPBasicRestException e) {
+        ExceptionModel exceptionModel = new ExceptionModel(e.getTimestamp(), e.getStatus().value(), e.getError(), e.getErrorMessage(), e.path);
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+        return new ResponseEntity<>(exceptionModel, httpHeaders, e.getStatus());
+    }
+
+    @ExceptionHandler(OCSPResponderBusyException.class)
+    public ResponseEntity<ExceptionModel> processResponderBusy(OCSPResponderBusyException e, HttpServletRequest request) {
+        return processRestError(new MCPBasicRestException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(),
+                request.getServletPath()));
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<ExceptionModel> processRateLimited(RateLimitedException e, HttpServletRequest request) {
+        return retryLater(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), e.getRetryAfterSeconds(), request);
+    }
+
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<ExceptionModel> processOverloaded(OverloadedException e, HttpServletRequest request) {
+        return retryLater(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), 1, request);
+    }
+
+    @ExceptionHandler(RequestTooLargeException.class)
+    public ResponseEntity<ExceptionModel> processRequestTooLarge(RequestTooLargeException e, HttpServletRequest request) {
+        return processRestError(new MCPBasicRestException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(),
+                request.getServletPath()));
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ExceptionModel> processNotReadable(HttpMessageNotReadableException e, HttpServletRequest request) {
+        // the size limit is hit while the body is converted when it has no Content-Length
+        if (e.getCause() instanceof RequestTooLargeException) {
+            return processRequestTooLarge((RequestTooLargeException) e.getCause(), request);
+        }
+        return processRestError(new MCPBasicRestException(HttpStatus.BAD_REQUEST, "Request body could not be read",
+                request.getServletPath()));
+    }
+
+    private ResponseEntity<ExceptionModel> retryLater(HttpStatus status, String message, long retryAfterSeconds,
+                                                      HttpServletRequest request) {
+        ResponseEntity<ExceptionModel> error = processRestError(new MCPBasicRestException(status, message,
+                request.getServletPath()));
+        return ResponseEntity.status(status).headers(error.getHeaders())
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds)).body(error.getBody());
+    }
+}
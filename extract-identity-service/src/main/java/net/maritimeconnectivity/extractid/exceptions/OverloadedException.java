@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.exceptions;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the service is handling as many requests of a kind as it can without their latency growing
+ */
+@Getter
+public class OverloadedException extends RuntimeException {
+
+    private final String endpoints;
+
+    public OverloadedException(String endpoints) {
+        super("The service is handling too many " + endpoints + " requests, retry later");
+        this.endpoints = endpoints;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.exceptions;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Thrown while reading a request body that is larger than the configured limit
+ */
+@Getter
+public class RequestTooLargeException extends IOException {
+
+    private final long maxSize;
+
+    public RequestTooLargeException(long maxSize) {
+        super("Request body is larger than " + maxSize + " bytes");
+        this.maxSize = maxSize;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.filters;
+
+import net.maritimeconnectivity.extractid.exceptions.OverloadedException;
+import net.maritimeconnectivity.extractid.exceptions.RateLimitedException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Rejection;
+import net.maritimeconnectivity.extractid.services.AdaptiveConcurrencyLimiter;
+import net.maritimeconnectivity.extractid.services.ClientRateLimiter;
+import net.maritimeconnectivity.extractid.services.ParsedCertificate;
+import net.maritimeconnectivity.extractid.services.TlsSessionCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rejects requests early instead of queueing them when the service is overloaded. Each client is rate
+ * limited, identified by the MRN of its TLS client certificate or else by its address, and gets 429 when
+ * it sends too much. Extraction and OCSP requests each have their own adaptive concurrency limit, so slow
+ * OCSP responders do not use up the budget of the extraction endpoints, and a request above the limit
+ * gets 503. Both are answered with a Retry-After header through the exception resolver.
+ */
+public class LoadSheddingInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String EXTRACTION = "extraction";
+    public static final String OCSP = "ocsp";
+
+    private static final String PERMIT_ATTRIBUTE = LoadSheddingInterceptor.class.getName() + ".permit";
+
+    private final AdaptiveConcurrencyLimiter extractionLimiter;
+    private final AdaptiveConcurrencyLimiter ocspLimiter;
+    private final ClientRateLimiter rateLimiter;
+    private final TlsSessionCache tlsSessionCache;
+    private final ExtractionMetrics metrics;
+
+    /**
+     * @param extractionLimiter the limit of the extraction endpoints, or null for no limit
+     * @param ocspLimiter       the limit of the endpoints that check OCSP, or null for no limit
+     * @param rateLimiter       the rate limit of each client, or null for no limit
+     */
+    public LoadSheddingInterceptor(AdaptiveConcurrencyLimiter extractionLimiter, AdaptiveConcurrencyLimiter ocspLimiter,
+                                   ClientRateLimiter rateLimiter, TlsSessionCache tlsSessionCache,
+                                   ExtractionMetrics metrics) {
+        this.extractionLimiter = extractionLimiter;
+        this.ocspLimiter = ocspLimiter;
+        this.rateLimiter = rateLimiter;
+        this.tlsSessionCache = tlsSessionCache;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the exception resolver only answers for controller methods, and an async result is dispatched again
+        if (!(handler instanceof HandlerMethod) || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+        if (rateLimiter != null) {
+            long waitNanos = rateLimiter.tryAcquire(getClient(request));
+            if (waitNanos > 0) {
+                metrics.reject(Rejection.RATE_LIMITED);
+                throw new RateLimitedException(Math.max(1, (long) Math.ceil(waitNanos / 1e9)));
+            }
+        }
+        boolean ocsp = isOcsp(request);
+        AdaptiveConcurrencyLimiter limiter = ocsp ? ocspLimiter : extractionLimiter;
+        if (limiter == null) {
+            return true;
+        }
+        if (!limiter.tryAcquire()) {
+            metrics.reject(Rejection.OVERLOADED);
+            throw new OverloadedException(ocsp ? OCSP : EXTRACTION);
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, new Permit(limiter, !isLongRunning(request)));
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Permit permit = (Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit == null) {
+            return;
+        }
+        // in case the result is never dispatched, for example because the client went away
+        request.getAsyncContext().addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                permit.release(response.getStatus());
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Permit permit = (Permit) request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit != null) {
+            permit.release(response.getStatus());
+        }
+    }
+
+    private String getClient(HttpServletRequest request) {
+        X509Certificate[] chain = (X509Certificate[]) request.getAttribute(TlsSessionCache.CLIENT_CERTIFICATE_ATTRIBUTE);
+        if (chain != null && chain.length > 0) {
+            ParsedCertificate parsed = tlsSessionCache.get(
+                    (String) request.getAttribute(TlsSessionCache.SESSION_ID_ATTRIBUTE), chain[0]);
+            String mrn = parsed == null ? null : getMrn(parsed);
+            if (mrn != null) {
+                return "mrn:" + mrn;
+            }
+            return "dn:" + chain[0].getSubjectX500Principal().getName();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+
+    /**
+     * @return the MRN of a client certificate, or null if it has none or its identity cannot be extracted,
+     *         in which case the client is told apart by its subject instead of failing the request
+     */
+    private static String getMrn(ParsedCertificate parsed) {
+        try {
+            return parsed.getIdentity().getMrn();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isOcsp(HttpServletRequest request) {
+        return request.getRequestURI().contains("/ocsp") || OCSP.equals(request.getParameter("revocation"));
+    }
+
+    private static boolean isLongRunning(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return uri.endsWith("/batch") || uri.endsWith("/stream");
+    }
+
+    private static class Permit {
+
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final boolean sample;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(AdaptiveConcurrencyLimiter limiter, boolean sample) {
+            this.limiter = limiter;
+            this.sample = sample;
+        }
+
+        void release(int status) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(System.nanoTime() - start, sample, status == HttpStatus.SERVICE_UNAVAILABLE.value());
+            }
+        }
+    }
+}
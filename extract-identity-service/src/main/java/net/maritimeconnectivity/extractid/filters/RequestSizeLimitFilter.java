@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.filters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.maritimeconnectivity.extractid.exceptions.RequestTooLargeException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Rejection;
+import net.maritimeconnectivity.extractid.model.ExceptionModel;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects request bodies that are larger than a limit. Requests that announce a too large
+ * Content-Length are answered with 413 before the body is read, and the body of every other
+ * request fails with {@link RequestTooLargeException} once more than the limit has been read.
+ */
+public class RequestSizeLimitFilter extends OncePerRequestFilter {
+
+    private static final String BATCH_SUFFIX = "/batch";
+    private static final String STREAM_SUFFIX = "/stream";
+
+    private final long maxBodySize;
+    private final long maxBatchBodySize;
+    private final long maxStreamBodySize;
+    private final ObjectMapper objectMapper;
+    private final ExtractionMetrics metrics;
+
+    public RequestSizeLimitFilter(long maxBodySize, long maxBatchBodySize, long maxStreamBodySize,
+                                  ObjectMapper objectMapper, ExtractionMetrics metrics) {
+        this.maxBodySize = maxBodySize;
+        this.maxBatchBodySize = maxBatchBodySize;
+        this.maxStreamBodySize = maxStreamBodySize;
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long limit = getLimit(request.getRequestURI());
+        if (request.getContentLengthLong() > limit) {
+            metrics.reject(Rejection.BODY_TOO_LARGE);
+            RequestTooLargeException e = new RequestTooLargeException(limit);
+            HttpStatus status = HttpStatus.PAYLOAD_TOO_LARGE;
+            response.setStatus(status.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), new ExceptionModel(System.currentTimeMillis(),
+                    status.value(), status.getReasonPhrase(), e.getMessage(), request.getServletPath()));
+            return;
+        }
+        filterChain.doFilter(new LimitedRequest(request, limit, metrics), response);
+    }
+
+    private long getLimit(String uri) {
+        if (uri.endsWith(BATCH_SUFFIX)) {
+            return maxBatchBodySize;
+        }
+        return uri.endsWith(STREAM_SUFFIX) ? maxStreamBodySize : maxBodySize;
+    }
+
+    private static class LimitedRequest extends HttpServletRequestWrapper {
+
+        private final long limit;
+        private final ExtractionMetrics metrics;
+        private ServletInputStream inputStream;
+
+        LimitedRequest(HttpServletRequest request, long limit, ExtractionMetrics metrics) {
+            super(request);
+            this.limit = limit;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new LimitedInputStream(super.getInputStream(), limit, metrics);
+            }
+            return inputStream;
+        }
+    }
+
+    private static class LimitedInputStream extends ServletInputStream {
+
+        private final ServletInputStream in;
+        private final long limit;
+        private final ExtractionMetrics metrics;
+        private long count;
+
+        LimitedInputStream(ServletInputStream in, long limit, ExtractionMetrics metrics) {
+            this.in = in;
+            this.limit = limit;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws RequestTooLargeException {
+            boolean withinLimit = count <= limit;
+            count += read;
+            if (count > limit) {
+                if (withinLimit) {
+                    metrics.reject(Rejection.BODY_TOO_LARGE);
+                }
+                throw new RequestTooLargeException(limit);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return in.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            in.setReadListener(readListener);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import net.maritimeconnectivity.extractid.services.AdaptiveConcurrencyLimiter;
+import net.maritimeconnectivity.extractid.services.HotCertificates;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The meters of the service. Timers and counters with fixed tags are registered up front so that
+ * recording does not look them up in the registry on every request.
+ */
+public class ExtractionMetrics {
+
+    public static final String STAGE_TIMER = "extractid.stage";
+    public static final String REJECTION_COUNTER = "extractid.rejections";
+    public static final String OCSP_REQUEST_TIMER = "extractid.ocsp.requests";
+    public static final String OCSP_ERROR_COUNTER = "extractid.ocsp.errors";
+    public static final String COALESCED_COUNTER = "extractid.coalesced";
+    public static final String OCSP_STAPLED_COUNTER = "extractid.ocsp.stapled";
+    public static final String OCSP_REFRESH_COUNTER = "extractid.ocsp.refreshes";
+    public static final String HOT_CERTIFICATES_GAUGE = "extractid.ocsp.hot-certificates";
+    public static final String CONCURRENCY_LIMIT_GAUGE = "extractid.concurrency.limit";
+    public static final String CONCURRENCY_IN_FLIGHT_GAUGE = "extractid.concurrency.in-flight";
+    public static final String RESPONDER_TAG = "responder";
+
+    public enum Stage {
+        PEM_DECODE, DER_PARSE, IDENTITY_EXTRACTION, JSON_WRITE
+    }
+
+    public enum Rejection {
+        PRIVATE_KEY, INVALID_PEM, INVALID_DER, INVALID_CERTIFICATE, UNKNOWN_FIELD, BATCH_TOO_LARGE, BODY_TOO_LARGE,
+        INVALID_OCSP_RESPONSE, RATE_LIMITED, OVERLOADED
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Rejection, Counter> rejectionCounters = new EnumMap<>(Rejection.class);
+
+    public ExtractionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder(STAGE_TIMER)
+                    .description("Time spent in each stage of handling a certificate")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        for (Rejection rejection : Rejection.values()) {
+            rejectionCounters.put(rejection, Counter.builder(REJECTION_COUNTER)
+                    .description("Inputs that were rejected, by reason")
+                    .tag("reason", rejection.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+    }
+
+    /**
+     * @return metrics that are not exported anywhere, for code that is used outside of the application context
+     */
+    public static ExtractionMetrics noop() {
+        return new ExtractionMetrics(new CompositeMeterRegistry());
+    }
+
+    public void recordStage(Stage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void reject(Rejection rejection) {
+        rejectionCounters.get(rejection).increment();
+    }
+
+    /**
+     * Records the latency of a request to an OCSP responder
+     * @param responder  host and port of the responder
+     * @param outcome    success, error or busy
+     * @param startNanos the time the request was started
+     */
+    public void recordOcspRequest(String responder, String outcome, long startNanos) {
+        Timer.builder(OCSP_REQUEST_TIMER)
+                .description("Latency of requests to OCSP responders")
+                .tag(RESPONDER_TAG, responder)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countOcspError(String responder, Throwable error) {
+        Counter.builder(OCSP_ERROR_COUNTER)
+                .description("Failed requests to OCSP responders and rejected responses, by error type")
+                .tag(RESPONDER_TAG, responder)
+                .tag("error", error.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts an OCSP response that was given with a request
+     * @param outcome verified if it was used, or rejected if the responder was asked instead
+     */
+    public void countStapledResponse(String outcome) {
+        Counter.builder(OCSP_STAPLED_COUNTER)
+                .description("OCSP responses given with requests, by whether they could be used")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts an OCSP response of a hot or pre-warmed certificate that was fetched in the background
+     * @param outcome renewed, or failed if the responder could not be asked or gave no usable answer
+     */
+    public void countOcspRefresh(String outcome) {
+        Counter.builder(OCSP_REFRESH_COUNTER)
+                .description("OCSP responses fetched in the background before they were needed, by outcome")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @param operation the kind of computation that is shared, like parse or ocsp
+     * @return          the counter of callers that got the result of an identical computation that was
+     *                  already running, see {@link net.maritimeconnectivity.extractid.services.SingleFlight}
+     */
+    public Counter coalescedCounter(String operation) {
+        return Counter.builder(COALESCED_COUNTER)
+                .description("Requests that shared the result of an identical computation that was already running")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    /**
+     * Publishes the size, hit and eviction statistics of a cache
+     */
+    public void monitor(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    /**
+     * Publishes the current limit and the requests in flight of a concurrency limiter
+     * @param endpoints the kind of endpoints it limits, like extraction or ocsp
+     */
+    public void monitor(AdaptiveConcurrencyLimiter limiter, String endpoints) {
+        Gauge.builder(CONCURRENCY_LIMIT_GAUGE, limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Requests that may be handled at the same time before new ones are rejected")
+                .tag("endpoints", endpoints)
+                .register(registry);
+        Gauge.builder(CONCURRENCY_IN_FLIGHT_GAUGE, limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Requests that are being handled")
+                .tag("endpoints", endpoints)
+                .register(registry);
+    }
+
+    /**
+     * Publishes the number of certificates whose OCSP responses may be renewed in the background
+     */
+    public void monitor(HotCertificates hotCertificates) {
+        Gauge.builder(HOT_CERTIFICATES_GAUGE, hotCertificates, HotCertificates::size)
+                .description("Often checked and pre-warmed certificates whose OCSP responses are renewed before they expire")
+                .register(registry);
+    }
+}
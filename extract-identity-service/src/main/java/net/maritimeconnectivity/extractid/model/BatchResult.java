@@ -16,22 +16,24 @@
 
 package net.maritimeconnectivity.extractid.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
-import net.maritimeconnectivity.pki.ocsp.CertStatus;
-
-import java.net.URL;
 
+/**
+ * The outcome for one input of a batch request, which holds either a result or an error
+ * @param <T> the type of the result
+ */
 @Getter
 @Setter
 @ToString
-public class OCSPResult {
-    private String ocspResponderUri;
-    private String certStatus;
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResult<T> implements JsonSerializable {
+    private int index;
+    private T result;
+    private String error;
 
-    public OCSPResult(URL uri, CertStatus status){
-        ocspResponderUri = uri.toString();
-        certStatus = status.toString();
-    }
 }
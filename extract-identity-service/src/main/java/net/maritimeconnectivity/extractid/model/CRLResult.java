@@ -19,30 +19,27 @@ package net.maritimeconnectivity.extractid.model;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
 
-import java.security.cert.X509Certificate;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 @Getter
 @Setter
 @ToString
-public class X509CertAttribute {
-    private String validFrom;
-    private String validTo;
-    private String subject;
-    private String issuer;
+public class CRLResult implements JsonSerializable {
+    private String crlIssuer;
+    private String certStatus;
+    private String thisUpdate;
+    private String nextUpdate;
 
-    public X509CertAttribute(X509Certificate cert){
-        this.validFrom = getGracefulDate(cert.getNotBefore());
-        this.validTo = getGracefulDate(cert.getNotAfter());
-        this.subject = cert.getSubjectDN().getName();
-        this.issuer = cert.getIssuerDN().getName();
+    public CRLResult(String crlIssuer, CertStatus status, Date thisUpdate, Date nextUpdate) {
+        this.crlIssuer = crlIssuer;
+        this.certStatus = status.toString();
+        this.thisUpdate = formatDate(thisUpdate);
+        this.nextUpdate = formatDate(nextUpdate);
     }
 
-    private String getGracefulDate(Date date){
-        String pattern = "yyyy/MM/dd HH:mm:ss Z";
-        SimpleDateFormat sdf = new SimpleDateFormat(pattern);
-        return sdf.format(date);
+    private static String formatDate(Date date) {
+        return date == null ? null : X509CertAttribute.DATE_FORMAT.format(date.toInstant());
     }
 }
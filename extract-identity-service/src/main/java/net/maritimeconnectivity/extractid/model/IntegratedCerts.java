@@ -26,5 +26,7 @@ import lombok.ToString;
 public class IntegratedCerts {
     private String certificate;
     private String issuerCertificate;
+    // optional base64 encoded DER OCSP response for the certificate, for example one stapled in a TLS handshake
+    private String ocspResponse;
 
 }
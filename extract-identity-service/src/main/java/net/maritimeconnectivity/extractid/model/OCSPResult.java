@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+
+import java.net.URL;
+import java.util.Date;
+
+@Getter
+@Setter
+@ToString
+public class OCSPResult {
+    private String ocspResponderUri;
+    private String certStatus;
+    // whether the answer was served from the OCSP response cache
+    private boolean cached;
+    // seconds since the responder vouched for the status
+    private long ageSeconds;
+    // whether the answer came from an OCSP response given with the request
+    private boolean stapled;
+    // when the responder will have newer information, used for the Cache-Control header
+    @JsonIgnore
+    private Date nextUpdate;
+
+    public OCSPResult(URL uri, CertStatus status){
+        ocspResponderUri = uri == null ? null : uri.toString();
+        certStatus = status.toString();
+    }
+
+    public OCSPResult(URL uri, CertStatus status, boolean cached, long ageSeconds, Date nextUpdate){
+        this(uri, status);
+        this.cached = cached;
+        this.ageSeconds = ageSeconds;
+        this.nextUpdate = nextUpdate;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+public class ValidationResult implements JsonSerializable {
+    private boolean valid;
+    // why the certificate is not valid
+    private String error;
+    private String trustAnchor;
+    // the combined revocation status of the chain, if it was checked
+    private String revocationStatus;
+    private List<ChainElement> chain;
+
+    @Getter
+    @Setter
+    @ToString
+    public static class ChainElement implements JsonSerializable {
+        private String subject;
+        private String issuer;
+        private String serialNumber;
+        private String notAfter;
+        private String certStatus;
+
+        public ChainElement(X509Certificate cert) {
+            this.subject = cert.getSubjectX500Principal().getName();
+            this.issuer = cert.getIssuerX500Principal().getName();
+            this.serialNumber = cert.getSerialNumber().toString(16);
+            this.notAfter = formatDate(cert.getNotAfter());
+        }
+    }
+
+    private static String formatDate(Date date) {
+        return date == null ? null : X509CertAttribute.DATE_FORMAT.format(date.toInstant());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1String;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+
+import java.io.IOException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The X.509 attributes of a certificate. The default fields are computed the first time they are
+ * read, and the optional fields are only present in copies made with {@link #withFields}.
+ */
+@Slf4j
+@Setter
+@JsonPropertyOrder({"validFrom", "validTo", "subject", "issuer"})
+public class X509CertAttribute implements JsonSerializable {
+
+    public static final String SERIAL_NUMBER = "serialNumber";
+    public static final String FINGERPRINT = "fingerprint";
+    public static final String KEY_ALGORITHM = "keyAlgorithm";
+    public static final String SUBJECT_ALTERNATIVE_NAMES = "subjectAlternativeNames";
+    public static final Set<String> OPTIONAL_FIELDS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList(SERIAL_NUMBER, FINGERPRINT, KEY_ALGORITHM, SUBJECT_ALTERNATIVE_NAMES)));
+
+    // also used for the dates of a validated chain
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss Z")
+            .withZone(ZoneId.systemDefault());
+
+    // names of the general name types in the order of their tags
+    private static final String[] GENERAL_NAME_TYPES = {"otherName", "rfc822Name", "dNSName", "x400Address",
+            "directoryName", "ediPartyName", "uniformResourceIdentifier", "iPAddress", "registeredID"};
+
+    @JsonIgnore
+    private final X509Certificate cert;
+
+    private String validFrom;
+    private String validTo;
+    private String subject;
+    private String issuer;
+
+    @Getter
+    private String serialNumber;
+    @Getter
+    private String fingerprint;
+    @Getter
+    private String keyAlgorithm;
+    @Getter
+    private List<String> subjectAlternativeNames;
+
+    public X509CertAttribute(X509Certificate cert){
+        this.cert = cert;
+    }
+
+    // the lazy getters may compute a value more than once under contention, which is harmless
+    // since the results are equal immutable strings
+
+    public String getValidFrom() {
+        if (validFrom == null) {
+            validFrom = DATE_FORMAT.format(cert.getNotBefore().toInstant());
+        }
+        return validFrom;
+    }
+
+    public String getValidTo() {
+        if (validTo == null) {
+            validTo = DATE_FORMAT.format(cert.getNotAfter().toInstant());
+        }
+        return validTo;
+    }
+
+    public String getSubject() {
+        if (subject == null) {
+            subject = cert.getSubjectX500Principal().toString();
+        }
+        return subject;
+    }
+
+    public String getIssuer() {
+        if (issuer == null) {
+            issuer = cert.getIssuerX500Principal().toString();
+        }
+        return issuer;
+    }
+
+    /**
+     * Creates a copy of these attributes that also contains the requested optional fields
+     * @param fields      names from {@link #OPTIONAL_FIELDS}
+     * @param fingerprint the SHA-256 fingerprint of the certificate, which is already known by the caller
+     * @return            the copy, or these attributes if no fields were requested
+     */
+    public X509CertAttribute withFields(Collection<String> fields, String fingerprint) {
+        if (fields == null || fields.isEmpty()) {
+            return this;
+        }
+        X509CertAttribute copy = new X509CertAttribute(cert);
+        copy.validFrom = getValidFrom();
+        copy.validTo = getValidTo();
+        copy.subject = getSubject();
+        copy.issuer = getIssuer();
+        if (fields.contains(SERIAL_NUMBER)) {
+            copy.serialNumber = cert.getSerialNumber().toString(16);
+        }
+        if (fields.contains(FINGERPRINT)) {
+            copy.fingerprint = fingerprint;
+        }
+        if (fields.contains(KEY_ALGORITHM)) {
+            copy.keyAlgorithm = cert.getPublicKey().getAlgorithm();
+        }
+        if (fields.contains(SUBJECT_ALTERNATIVE_NAMES)) {
+            copy.subjectAlternativeNames = formatSubjectAlternativeNames(cert);
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "X509CertAttribute(validFrom=" + getValidFrom() + ", validTo=" + getValidTo()
+                + ", subject=" + getSubject() + ", issuer=" + getIssuer() + ")";
+    }
+
+    /**
+     * @return each subject alternative name as "type:value", with other names as "type:oid=value"
+     */
+    private static List<String> formatSubjectAlternativeNames(X509Certificate cert) {
+        Collection<List<?>> altNames;
+        try {
+            altNames = cert.getSubjectAlternativeNames();
+        } catch (CertificateParsingException e) {
+            log.debug("Could not parse subject alternative names", e);
+            return Collections.emptyList();
+        }
+        if (altNames == null) {
+            return Collections.emptyList();
+        }
+        List<String> formatted = new ArrayList<>(altNames.size());
+        for (List<?> altName : altNames) {
+            int type = (Integer) altName.get(0);
+            Object value = altName.get(1);
+            String typeName = type < GENERAL_NAME_TYPES.length ? GENERAL_NAME_TYPES[type] : String.valueOf(type);
+            if (value instanceof byte[]) {
+                value = type == 0 ? formatOtherName((byte[]) value) : "#" + CertificateUtils.toHex((byte[]) value);
+            }
+            formatted.add(typeName + ":" + value);
+        }
+        return formatted;
+    }
+
+    private static String formatOtherName(byte[] encoded) {
+        try {
+            ASN1Primitive primitive = ASN1Primitive.fromByteArray(encoded);
+            // the JDK may leave the implicit GeneralName tag around the sequence
+            ASN1Sequence sequence = primitive instanceof ASN1TaggedObject
+                    ? ASN1Sequence.getInstance((ASN1TaggedObject) primitive, false)
+                    : ASN1Sequence.getInstance(primitive);
+            // the value of an other name is explicitly tagged
+            ASN1TaggedObject tagged = ASN1TaggedObject.getInstance(sequence.getObjectAt(1));
+            ASN1Primitive value = tagged.getObject();
+            while (value instanceof ASN1TaggedObject) {
+                value = ((ASN1TaggedObject) value).getObject();
+            }
+            String oid = ASN1ObjectIdentifier.getInstance(sequence.getObjectAt(0)).getId();
+            String text = value instanceof ASN1String ? ((ASN1String) value).getString()
+                    : "#" + CertificateUtils.toHex(value.getEncoded());
+            return oid + "=" + text;
+        } catch (IOException | IllegalArgumentException e) {
+            return "#" + CertificateUtils.toHex(encoded);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+/**
+ * Limits the number of requests that are handled at the same time, adapting the limit to the observed
+ * latency: it grows by one while requests finish faster than the threshold and the limit is in use, and
+ * shrinks by a factor when a request is slower or the backend reported it was overloaded (additive
+ * increase, multiplicative decrease). Requests above the limit are rejected instead of being queued, so
+ * the latency of the requests that are accepted stays bounded.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private double limit;
+    private int inFlight;
+
+    /**
+     * @param initialLimit          the limit before any request has finished
+     * @param minLimit              the limit never shrinks below this
+     * @param maxLimit              the limit never grows above this
+     * @param latencyThresholdNanos requests that take longer than this make the limit shrink
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdNanos) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The limits must satisfy 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * @return true if the request may be handled, in which case {@link #release} must be called once it is done
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * @param latencyNanos how long the request took
+     * @param sample       whether the latency says something about the load, which it does not for requests
+     *                     that are expected to take long, like streams
+     * @param dropped      whether the request failed because a backend was overloaded
+     */
+    public synchronized void release(long latencyNanos, boolean sample, boolean dropped) {
+        int wasInFlight = inFlight--;
+        if (dropped || sample && latencyNanos > latencyThresholdNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (sample && wasInFlight * 2 >= limit) {
+            // only grow while the limit is actually what holds requests back
+            limit = Math.min(maxLimit, limit + 1);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.config.CRLProperties;
+import net.maritimeconnectivity.extractid.model.CRLResult;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Revocation checks against CRLs of known CAs. The serial numbers of each verified CRL are put into
+ * a {@link RevocationIndex}, so a check is a local lookup. CRLs are reloaded in the background when
+ * their nextUpdate is reached, and the previous index is kept if a reload fails.
+ */
+@Slf4j
+public class CRLStore {
+
+    // allowed difference between our clock and the clock of the CA
+    private static final long CLOCK_SKEW_MILLIS = 5 * 60 * 1000L;
+
+    private final CRLProperties properties;
+    private final Map<X500Principal, List<Authority>> authorities = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+    private Path directory;
+
+    public CRLStore(CRLProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Loads the issuer certificates and the first version of every CRL, and schedules the reloads
+     */
+    public void start() throws IOException {
+        directory = properties.getDirectory() != null ? Files.createDirectories(Paths.get(properties.getDirectory()))
+                : Files.createTempDirectory("extractid-crl");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crl-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (CRLProperties.Authority config : properties.getAuthorities()) {
+            X509Certificate issuerCert;
+            try (InputStream in = open(config.getIssuerCertificate())) {
+                issuerCert = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+            } catch (IOException | GeneralSecurityException e) {
+                throw new IllegalStateException("Could not load CRL issuer certificate " + config.getIssuerCertificate(), e);
+            }
+            Authority authority = new Authority(issuerCert, config.getCrl());
+            authorities.computeIfAbsent(issuerCert.getSubjectX500Principal(), p -> new ArrayList<>()).add(authority);
+            refresh(authority);
+        }
+    }
+
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Looks up the revocation status of a certificate in the CRL of its issuer. The signature of the
+     * certificate itself is not verified.
+     * @param cert the certificate to check
+     * @return     the result, or null if no CRL is configured for the issuer of the certificate
+     */
+    public CRLResult checkStatus(X509Certificate cert) {
+        Authority authority = findAuthority(cert);
+        if (authority == null) {
+            return null;
+        }
+        LoadedCRL loaded = authority.current;
+        String crlIssuer = authority.issuerCert.getSubjectX500Principal().getName();
+        if (loaded == null || loaded.isExpired()) {
+            return new CRLResult(crlIssuer, CertStatus.UNKNOWN, loaded == null ? null : loaded.thisUpdate,
+                    loaded == null ? null : loaded.nextUpdate);
+        }
+        CertStatus status = loaded.index.isRevoked(cert.getSerialNumber()) ? CertStatus.REVOKED : CertStatus.GOOD;
+        return new CRLResult(crlIssuer, status, loaded.thisUpdate, loaded.nextUpdate);
+    }
+
+    private Authority findAuthority(X509Certificate cert) {
+        List<Authority> candidates = authorities.get(cert.getIssuerX500Principal());
+        if (candidates == null) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        // several keys of the same CA, pick the one the certificate refers to
+        byte[] authorityKeyId = CertificateUtils.getAuthorityKeyId(cert);
+        for (Authority candidate : candidates) {
+            if (authorityKeyId != null && Arrays.equals(authorityKeyId, candidate.keyId)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void refresh(Authority authority) {
+        long delay;
+        try {
+            X509CRL crl = fetch(authority);
+            LoadedCRL previous = authority.current;
+            // keep the current index until something newer has been published
+            if (previous == null || crl.getThisUpdate().after(previous.thisUpdate)) {
+                LoadedCRL loaded = index(crl, authority);
+                authority.current = loaded;
+                log.info("Loaded CRL of {} with {} revoked certificates", authority.location, loaded.index.size());
+                if (previous != null) {
+                    deleteQuietly(previous.index.getFile());
+                }
+            }
+            delay = getRefreshDelay(authority.current);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            // whatever went wrong, the next attempt must be scheduled or the CRL would never be reloaded
+            log.error("Could not load CRL from {}", authority.location, e);
+            delay = properties.getRetryInterval().toMillis();
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(() -> refresh(authority), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private X509CRL fetch(Authority authority) throws IOException, GeneralSecurityException {
+        X509CRL crl;
+        try (InputStream in = open(authority.location)) {
+            crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(in);
+        }
+        verify(crl, authority.issuerCert);
+        return crl;
+    }
+
+    private LoadedCRL index(X509CRL crl, Authority authority) throws IOException, GeneralSecurityException {
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        List<BigInteger> serials = new ArrayList<>(entries == null ? 0 : entries.size());
+        if (entries != null) {
+            for (X509CRLEntry entry : entries) {
+                serials.add(entry.getSerialNumber());
+            }
+        }
+        Path file = directory.resolve(CertificateUtils.sha256Fingerprint(authority.issuerCert.getEncoded())
+                .substring(0, 16) + "-" + crl.getThisUpdate().getTime() + ".idx");
+        return new LoadedCRL(RevocationIndex.create(file, serials), crl.getThisUpdate(), crl.getNextUpdate());
+    }
+
+    private static void verify(X509CRL crl, X509Certificate issuerCert) throws GeneralSecurityException {
+        if (!crl.getIssuerX500Principal().equals(issuerCert.getSubjectX500Principal())) {
+            throw new GeneralSecurityException("CRL is not issued by " + issuerCert.getSubjectX500Principal());
+        }
+        Set<String> criticalExtensions = crl.getCriticalExtensionOIDs();
+        if (criticalExtensions != null && criticalExtensions.contains(Extension.deltaCRLIndicator.getId())) {
+            throw new GeneralSecurityException("Delta CRLs are not supported");
+        }
+        // the entries of an indirect CRL can be about certificates of other CAs, which the index does not tell apart
+        byte[] distributionPoint = crl.getExtensionValue(Extension.issuingDistributionPoint.getId());
+        if (distributionPoint != null && IssuingDistributionPoint.getInstance(
+                ASN1OctetString.getInstance(distributionPoint).getOctets()).isIndirectCRL()) {
+            throw new GeneralSecurityException("Indirect CRLs are not supported");
+        }
+        crl.verify(issuerCert.getPublicKey());
+        long now = System.currentTimeMillis();
+        if (crl.getThisUpdate().getTime() > now + CLOCK_SKEW_MILLIS) {
+            throw new GeneralSecurityException("CRL is not yet valid");
+        }
+        if (crl.getNextUpdate() != null && crl.getNextUpdate().getTime() < now - CLOCK_SKEW_MILLIS) {
+            throw new GeneralSecurityException("CRL has expired");
+        }
+    }
+
+    private long getRefreshDelay(LoadedCRL loaded) {
+        long now = System.currentTimeMillis();
+        long refreshAt = loaded.nextUpdate != null ? loaded.nextUpdate.getTime()
+                : now + properties.getRefreshInterval().toMillis();
+        return Math.max(properties.getMinRefreshInterval().toMillis(), refreshAt - now);
+    }
+
+    private InputStream open(String location) throws IOException {
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+            connection.setConnectTimeout((int) properties.getConnectTimeout().toMillis());
+            connection.setReadTimeout((int) properties.getReadTimeout().toMillis());
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("Server answered with HTTP status " + connection.getResponseCode());
+            }
+            return connection.getInputStream();
+        } else if (location.startsWith("file:")) {
+            return Files.newInputStream(Paths.get(URI.create(location)));
+        }
+        return Files.newInputStream(Paths.get(location));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Could not delete old revocation index {}", file, e);
+        }
+    }
+
+    private static class Authority {
+        private final X509Certificate issuerCert;
+        private final byte[] keyId;
+        private final String location;
+        private volatile LoadedCRL current;
+
+        private Authority(X509Certificate issuerCert, String location) {
+            this.issuerCert = issuerCert;
+            this.keyId = CertificateUtils.getSubjectKeyId(issuerCert);
+            this.location = location;
+        }
+    }
+
+    private static class LoadedCRL {
+        private final RevocationIndex index;
+        private final Date thisUpdate;
+        private final Date nextUpdate;
+
+        private LoadedCRL(RevocationIndex index, Date thisUpdate, Date nextUpdate) {
+            this.index = index;
+            this.thisUpdate = thisUpdate;
+            this.nextUpdate = nextUpdate;
+        }
+
+        private boolean isExpired() {
+            return nextUpdate != null && nextUpdate.getTime() < System.currentTimeMillis() - CLOCK_SKEW_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+
+import java.util.Date;
+
+/**
+ * A verified OCSP answer for a single certificate together with the signed response it came from
+ */
+@Getter
+@AllArgsConstructor
+public class CachedOCSPResponse {
+    private final byte[] encodedResponse;
+    private final CertStatus status;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private final long fetchedAt;
+
+    /**
+     * @return the number of seconds since the responder vouched for the status
+     */
+    public long getAgeSeconds() {
+        return Math.max(0, (System.currentTimeMillis() - thisUpdate.getTime()) / 1000);
+    }
+}
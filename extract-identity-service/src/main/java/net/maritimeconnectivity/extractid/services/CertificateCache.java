@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics.Stage;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.pki.PKIIdentity;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+/**
+ * Bounded cache of parsed certificates keyed by the SHA-256 fingerprint of their DER encoding.
+ * Entries are evicted when the cache is full, when the configured TTL has passed or when the
+ * certificate itself expires, whichever comes first. A certificate that is requested again while
+ * it is being parsed is parsed only once. Identities are extracted when they are first asked for.
+ */
+public class CertificateCache {
+
+    private final Cache<String, ParsedCertificate> cache;
+    private final ExtractionMetrics metrics;
+    private final SingleFlight<String, ParsedCertificate> parsing;
+
+    public CertificateCache(long maxSize, Duration ttl) {
+        this(maxSize, ttl, ExtractionMetrics.noop());
+    }
+
+    public CertificateCache(long maxSize, Duration ttl, ExtractionMetrics metrics) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new CertificateExpiry(ttl.toNanos()))
+                .recordStats()
+                .build();
+        this.metrics = metrics;
+        this.parsing = new SingleFlight<>(metrics.coalescedCounter("parse"));
+        metrics.monitor(cache, "certificates");
+    }
+
+    /**
+     * Looks up a PEM encoded certificate, parsing it if it is not cached
+     * @param pemCert the PEM certificate as a string
+     * @return        the parsed certificate, or null if the input is not a valid certificate
+     */
+    public ParsedCertificate getFromPem(String pemCert) {
+        long start = System.nanoTime();
+        byte[] der = CertificateUtils.pemToDer(pemCert);
+        metrics.recordStage(Stage.PEM_DECODE, start);
+        if (der == null) {
+            return null;
+        }
+        return get(der);
+    }
+
+    /**
+     * Looks up a DER encoded certificate, parsing it if it is not cached
+     * @param der the DER encoded certificate
+     * @return    the parsed certificate, or null if the input is not a valid certificate
+     */
+    public ParsedCertificate get(byte[] der) {
+        return get(CertificateUtils.sha256Fingerprint(der), der);
+    }
+
+    /**
+     * Looks up a DER encoded certificate whose fingerprint is already known
+     * @param fingerprint the SHA-256 fingerprint of the certificate, as given by {@link CertificateUtils#sha256Fingerprint}
+     * @param der         the DER encoded certificate
+     * @return            the parsed certificate, or null if the input is not a valid certificate
+     */
+    public ParsedCertificate get(String fingerprint, byte[] der) {
+        ParsedCertificate parsed = cache.getIfPresent(fingerprint);
+        if (parsed != null) {
+            return parsed;
+        }
+        // not Cache.get(key, loader), which would also block the callers of other keys in the same bin
+        return parsing.execute(fingerprint, () -> parse(fingerprint, der));
+    }
+
+    private ParsedCertificate parse(String fingerprint, byte[] der) {
+        long start = System.nanoTime();
+        X509Certificate cert = CertificateUtils.getCertFromDer(der);
+        metrics.recordStage(Stage.DER_PARSE, start);
+        if (cert == null) {
+            return null;
+        }
+        ParsedCertificate parsed = new ParsedCertificate(fingerprint, cert, () -> extractIdentity(cert));
+        cache.put(fingerprint, parsed);
+        return parsed;
+    }
+
+    private PKIIdentity extractIdentity(X509Certificate cert) {
+        long start = System.nanoTime();
+        PKIIdentity identity = CertificateUtils.getIdentity(cert);
+        metrics.recordStage(Stage.IDENTITY_EXTRACTION, start);
+        return identity;
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    static class CertificateExpiry implements Expiry<String, ParsedCertificate> {
+
+        private final long ttlNanos;
+
+        CertificateExpiry(long ttlNanos) {
+            this.ttlNanos = ttlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, ParsedCertificate value, long currentTime) {
+            long untilNotAfter = Duration.ofMillis(value.getCertificate().getNotAfter().getTime()
+                    - System.currentTimeMillis()).toNanos();
+            return Math.max(0, Math.min(ttlNanos, untilNotAfter));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, ParsedCertificate value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, ParsedCertificate value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Certificates indexed by subject key identifier and by subject name, for finding the possible
+ * issuers of a certificate. The index is not changed after it has been created.
+ */
+public class CertificateIndex {
+
+    private final Map<String, List<X509Certificate>> bySubjectKeyId = new HashMap<>();
+    private final Map<X500Principal, List<X509Certificate>> bySubject = new HashMap<>();
+    private int size;
+
+    public CertificateIndex(Collection<X509Certificate> certificates) {
+        for (X509Certificate cert : certificates) {
+            List<X509Certificate> sameSubject = bySubject.computeIfAbsent(cert.getSubjectX500Principal(),
+                    s -> new ArrayList<>());
+            if (sameSubject.contains(cert)) {
+                continue;
+            }
+            sameSubject.add(cert);
+            byte[] subjectKeyId = CertificateUtils.getSubjectKeyId(cert);
+            if (subjectKeyId != null) {
+                bySubjectKeyId.computeIfAbsent(CertificateUtils.toHex(subjectKeyId), k -> new ArrayList<>()).add(cert);
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Finds the certificates that may have issued a certificate. If the certificate names the key
+     * of its issuer, only the certificates with that key are returned, otherwise all certificates
+     * with the name of the issuer are.
+     * @param cert the certificate whose issuer is looked for
+     * @return     the candidates, which still have to be verified
+     */
+    public List<X509Certificate> findIssuers(X509Certificate cert) {
+        X500Principal issuer = cert.getIssuerX500Principal();
+        byte[] authorityKeyId = CertificateUtils.getAuthorityKeyId(cert);
+        if (authorityKeyId != null) {
+            List<X509Certificate> byKey = bySubjectKeyId.get(CertificateUtils.toHex(authorityKeyId));
+            if (byKey != null) {
+                List<X509Certificate> candidates = new ArrayList<>(byKey.size());
+                for (X509Certificate candidate : byKey) {
+                    if (candidate.getSubjectX500Principal().equals(issuer)) {
+                        candidates.add(candidate);
+                    }
+                }
+                if (!candidates.isEmpty()) {
+                    return candidates;
+                }
+            }
+        }
+        return bySubject.getOrDefault(issuer, Collections.emptyList());
+    }
+
+    public boolean contains(X509Certificate cert) {
+        return bySubject.getOrDefault(cert.getSubjectX500Principal(), Collections.emptyList()).contains(cert);
+    }
+
+    public int size() {
+        return size;
+    }
+}
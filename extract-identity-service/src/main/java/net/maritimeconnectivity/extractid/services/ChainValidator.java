@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import org.bouncycastle.asn1.x509.Extension;
+
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Validates certificates by building a path from the certificate to one of the trust anchors.
+ * The anchors and the configured intermediates are indexed once, intermediates sent along with a
+ * certificate are indexed per request, and successful signature verifications are cached for each
+ * pair of issuer and certificate so that certificates of the same CA are only verified once.
+ */
+public class ChainValidator {
+
+    // key usage bit that allows a key to sign certificates
+    private static final int KEY_CERT_SIGN = 5;
+    // the extensions that are checked, a certificate with any other critical extension is rejected
+    private static final Set<String> HANDLED_CRITICAL_EXTENSIONS = new HashSet<>(Arrays.asList(
+            Extension.basicConstraints.getId(), Extension.keyUsage.getId()));
+
+    private final CertificateIndex trustAnchors;
+    private final CertificateIndex trustedCertificates;
+    private final Cache<String, Boolean> verifiedSignatures;
+    private final int maxPathLength;
+    private final int maxIntermediates;
+    private final int maxIssuerChecks;
+
+    public ChainValidator(Collection<X509Certificate> trustAnchors, Collection<X509Certificate> intermediates,
+                          long signatureCacheSize, int maxPathLength, int maxIntermediates, int maxIssuerChecks,
+                          ExtractionMetrics metrics) {
+        this.trustAnchors = new CertificateIndex(trustAnchors);
+        List<X509Certificate> trusted = new ArrayList<>(trustAnchors);
+        trusted.addAll(intermediates);
+        this.trustedCertificates = new CertificateIndex(trusted);
+        this.verifiedSignatures = Caffeine.newBuilder()
+                .maximumSize(signatureCacheSize)
+                .recordStats()
+                .build();
+        this.maxPathLength = maxPathLength;
+        this.maxIntermediates = maxIntermediates;
+        this.maxIssuerChecks = maxIssuerChecks;
+        metrics.monitor(verifiedSignatures, "signatures");
+    }
+
+    public boolean hasTrustAnchors() {
+        return trustAnchors.size() > 0;
+    }
+
+    public int getMaxIntermediates() {
+        return maxIntermediates;
+    }
+
+    /**
+     * Looks for a valid path from a certificate to a trust anchor. Each certificate on the path must
+     * be valid at the given time, each issuer must be a CA that may sign certificates and whose path
+     * length constraint is kept, and each signature must verify with the key of the issuer.
+     * Certificate policies, name constraints and extended key usage are not processed, so a certificate
+     * below the trust anchor with a critical extension other than basic constraints or key usage is
+     * rejected. Revocation is not checked.
+     * The untrusted intermediates can make many paths possible, so the search gives up once it has
+     * checked the configured number of candidate issuers.
+     * @param cert          the certificate to validate
+     * @param intermediates untrusted certificates that may be used to build the path
+     * @param date          the time at which the path must be valid
+     * @return              the path from the certificate to the trust anchor, or the reason none was found
+     */
+    public ValidatedChain validate(X509Certificate cert, Collection<X509Certificate> intermediates, Date date) {
+        if (intermediates.size() > maxIntermediates) {
+            return ValidatedChain.invalid(cert, "At most " + maxIntermediates + " intermediate certificates can be sent");
+        }
+        if (!isValidAt(cert, date)) {
+            return ValidatedChain.invalid(cert, "Certificate is not valid at the time of validation");
+        }
+        String unhandled = findUnhandledCriticalExtension(cert);
+        if (unhandled != null && !trustAnchors.contains(cert)) {
+            return ValidatedChain.invalid(cert, "Certificate has the unsupported critical extension " + unhandled);
+        }
+        List<X509Certificate> path = new ArrayList<>();
+        path.add(cert);
+        PathSearch search = new PathSearch(new CertificateIndex(intermediates), date, maxIssuerChecks);
+        if (buildPath(path, search)) {
+            return ValidatedChain.valid(path);
+        }
+        if (search.issuerChecksLeft < 0) {
+            return ValidatedChain.invalid(cert, "No path to a trust anchor was found within " + maxIssuerChecks
+                    + " issuer checks");
+        }
+        return ValidatedChain.invalid(cert, search.errors.isEmpty() ? "No path to a trust anchor was found"
+                : search.errors.get(0));
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the signature cache
+     */
+    public CacheStats getSignatureCacheStats() {
+        return verifiedSignatures.stats();
+    }
+
+    /**
+     * Extends the path from its last certificate towards a trust anchor, trying each candidate
+     * issuer in turn
+     */
+    private boolean buildPath(List<X509Certificate> path, PathSearch search) {
+        X509Certificate cert = path.get(path.size() - 1);
+        if (trustAnchors.contains(cert)) {
+            return true;
+        }
+        if (path.size() > maxPathLength) {
+            search.errors.add("Certificate chain is longer than " + maxPathLength + " certificates");
+            return false;
+        }
+
+        List<X509Certificate> candidates = new ArrayList<>(trustedCertificates.findIssuers(cert));
+        for (X509Certificate candidate : search.untrusted.findIssuers(cert)) {
+            if (!candidates.contains(candidate)) {
+                candidates.add(candidate);
+            }
+        }
+        if (candidates.isEmpty()) {
+            search.errors.add("No certificate of the issuer " + cert.getIssuerX500Principal().getName() + " is known");
+            return false;
+        }
+
+        for (X509Certificate issuer : candidates) {
+            if (path.contains(issuer)) {
+                continue;
+            }
+            if (--search.issuerChecksLeft < 0) {
+                return false;
+            }
+            // the number of CA certificates between the issuer and the validated certificate
+            String error = checkIssuer(issuer, cert, path.size() - 1, search.date);
+            if (error != null) {
+                search.errors.add(error);
+                continue;
+            }
+            path.add(issuer);
+            if (buildPath(path, search)) {
+                return true;
+            }
+            path.remove(path.size() - 1);
+        }
+        return false;
+    }
+
+    private String checkIssuer(X509Certificate issuer, X509Certificate cert, int certsBelow, Date date) {
+        String name = issuer.getSubjectX500Principal().getName();
+        if (!isValidAt(issuer, date)) {
+            return "Issuer certificate " + name + " is not valid at the time of validation";
+        }
+        String unhandled = findUnhandledCriticalExtension(issuer);
+        if (unhandled != null && !trustAnchors.contains(issuer)) {
+            return "Issuer certificate " + name + " has the unsupported critical extension " + unhandled;
+        }
+        if (issuer.getBasicConstraints() < 0) {
+            return "Issuer certificate " + name + " is not a CA certificate";
+        }
+        if (issuer.getBasicConstraints() < certsBelow) {
+            return "Path length constraint of " + name + " is exceeded";
+        }
+        boolean[] keyUsage = issuer.getKeyUsage();
+        if (keyUsage != null && !keyUsage[KEY_CERT_SIGN]) {
+            return "Issuer certificate " + name + " may not sign certificates";
+        }
+        if (!verifySignature(issuer, cert)) {
+            return "Signature of " + cert.getSubjectX500Principal().getName() + " does not verify with the key of " + name;
+        }
+        return null;
+    }
+
+    private boolean verifySignature(X509Certificate issuer, X509Certificate cert) {
+        String key;
+        try {
+            key = CertificateUtils.sha256Fingerprint(issuer.getEncoded()) + ":"
+                    + CertificateUtils.sha256Fingerprint(cert.getEncoded());
+        } catch (CertificateException e) {
+            return false;
+        }
+        if (verifiedSignatures.getIfPresent(key) != null) {
+            return true;
+        }
+        try {
+            cert.verify(issuer.getPublicKey());
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+        verifiedSignatures.put(key, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * @return the OID of a critical extension of the certificate that is not checked, or null if there is none
+     */
+    private static String findUnhandledCriticalExtension(X509Certificate cert) {
+        Set<String> critical = cert.getCriticalExtensionOIDs();
+        if (critical != null) {
+            for (String oid : critical) {
+                if (!HANDLED_CRITICAL_EXTENSIONS.contains(oid)) {
+                    return oid;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isValidAt(X509Certificate cert, Date date) {
+        try {
+            cert.checkValidity(date);
+            return true;
+        } catch (CertificateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The state of the search for a path from one certificate
+     */
+    private static class PathSearch {
+        private final CertificateIndex untrusted;
+        private final Date date;
+        // why candidate issuers were rejected, in the order they were tried
+        private final List<String> errors = new ArrayList<>();
+        // negative once the search has given up
+        private int issuerChecksLeft;
+
+        PathSearch(CertificateIndex untrusted, Date date, int issuerChecks) {
+            this.untrusted = untrusted;
+            this.date = date;
+            this.issuerChecksLeft = issuerChecks;
+        }
+    }
+}
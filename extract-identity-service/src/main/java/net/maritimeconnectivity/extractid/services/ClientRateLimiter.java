@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limits per client. Each client may send a burst of requests at once and then
+ * requests at a steady rate. Buckets of clients that have not been seen for a while are dropped,
+ * which is the same as a full bucket.
+ */
+public class ClientRateLimiter {
+
+    private static final long MAX_CLIENTS = 100_000;
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final Cache<String, Bucket> buckets;
+
+    /**
+     * @param requestsPerSecond the steady rate each client is allowed
+     * @param burst             the number of requests a client that has been idle may send at once
+     */
+    public ClientRateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and the burst must be positive");
+        }
+        this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        // a bucket that was idle this long is full again
+        long refillNanos = (long) Math.ceil(burst / tokensPerNano);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(MAX_CLIENTS)
+                .expireAfterAccess(Duration.ofNanos(refillNanos))
+                .build();
+    }
+
+    /**
+     * Takes a token from the bucket of a client
+     * @param client the identity of the client
+     * @return       0 if the request may be handled, or else the number of nanoseconds until it may be sent again
+     */
+    public long tryAcquire(String client) {
+        return buckets.get(client, c -> new Bucket(burst)).tryAcquire(System.nanoTime());
+    }
+
+    private class Bucket {
+
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        Bucket(double tokens) {
+            this.tokens = tokens;
+        }
+
+        synchronized long tryAcquire(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+/**
+ * Estimates how often items have been seen using a fixed amount of memory. Each item is counted
+ * in one counter of each of four rows, and its estimate is the smallest of those counters, so
+ * collisions can only make an estimate too high. All counters are halved after a number of
+ * increments proportional to the width, so items that were popular a long time ago fade out.
+ */
+public class CountMinSketch {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x97cb3127L, 0xb7e15162L, 0x9e3779b9L, 0xf1357aeaL};
+
+    private final int[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param width the number of counters in each row, rounded up to a power of two. It should be
+     *              several times the number of distinct items that are expected to be popular.
+     */
+    public CountMinSketch(int width) {
+        int size = Math.max(16, Integer.highestOneBit(width - 1) << 1);
+        this.counters = new int[DEPTH][size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * Counts one occurrence of an item
+     * @return the estimated number of times the item has been seen, including this one
+     */
+    public synchronized int increment(Object item) {
+        int hash = spread(item.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            if (counters[row][index] < Integer.MAX_VALUE) {
+                counters[row][index]++;
+            }
+            estimate = Math.min(estimate, counters[row][index]);
+        }
+        if (++additions >= sampleSize) {
+            age();
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the estimated number of times an item has been seen
+     */
+    public synchronized int estimate(Object item) {
+        int hash = spread(item.hashCode());
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters[row][indexOf(hash, row)]);
+        }
+        return estimate;
+    }
+
+    private void age() {
+        for (int[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        // the hashes of similar strings differ mostly in the low bits
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The certificates whose OCSP status is checked most often. Every check is counted in a
+ * {@link CountMinSketch}, and a bounded set of candidates is kept of the certificates that were
+ * checked at least twice and about as often as the current hot set. Certificates can also be
+ * pinned, which keeps them in the hot set however often they are checked.
+ */
+public class HotCertificates {
+
+    private static final int MIN_FREQUENCY = 2;
+
+    private final int maxSize;
+    private final CountMinSketch sketch;
+    private final ConcurrentMap<String, OCSPCheck> candidates = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OCSPCheck> pinned = new ConcurrentHashMap<>();
+    private volatile int admissionFrequency = MIN_FREQUENCY;
+
+    /**
+     * @param maxSize the number of certificates in the hot set, not counting pinned ones
+     */
+    public HotCertificates(int maxSize) {
+        this.maxSize = maxSize;
+        this.sketch = new CountMinSketch(16 * maxSize);
+    }
+
+    /**
+     * Counts a check of a certificate
+     * @param key   the key of the certificate in the OCSP response cache
+     * @param check the certificate and its issuer
+     */
+    public void record(String key, OCSPCheck check) {
+        if (maxSize <= 0) {
+            return;
+        }
+        int frequency = sketch.increment(key);
+        // candidates beyond twice the size of the hot set wait until the next time it is computed
+        if (frequency >= admissionFrequency && candidates.size() < 2 * maxSize && !candidates.containsKey(key)) {
+            candidates.putIfAbsent(key, withoutStapledResponse(check));
+        }
+    }
+
+    /**
+     * Keeps a certificate in the hot set, for certificates that are known to be needed before they
+     * have been checked
+     */
+    public void pin(String key, OCSPCheck check) {
+        pinned.put(key, withoutStapledResponse(check));
+    }
+
+    /**
+     * Computes the hot set from the candidates, and drops the candidates that are not in it
+     * @return the pinned certificates followed by the most often checked ones, by key
+     */
+    public synchronized Map<String, OCSPCheck> getHottest() {
+        long now = System.currentTimeMillis();
+        candidates.entrySet().removeIf(e -> e.getValue().getCertificate().getNotAfter().getTime() < now);
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(candidates.size());
+        for (String key : candidates.keySet()) {
+            ranked.add(new AbstractMap.SimpleImmutableEntry<>(key, sketch.estimate(key)));
+        }
+        ranked.sort(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()));
+
+        Map<String, OCSPCheck> hottest = new LinkedHashMap<>(pinned);
+        int kept = 0;
+        int lowest = MIN_FREQUENCY;
+        for (Map.Entry<String, Integer> entry : ranked) {
+            // the counters are aged, so a candidate may no longer be checked often enough
+            if (kept < maxSize && entry.getValue() >= MIN_FREQUENCY) {
+                OCSPCheck check = candidates.get(entry.getKey());
+                if (check != null) {
+                    hottest.putIfAbsent(entry.getKey(), check);
+                    lowest = entry.getValue();
+                    kept++;
+                }
+            } else {
+                candidates.remove(entry.getKey());
+            }
+        }
+        admissionFrequency = kept < maxSize ? MIN_FREQUENCY : Math.max(MIN_FREQUENCY, lowest);
+        return hottest;
+    }
+
+    /**
+     * @return the number of candidates and pinned certificates
+     */
+    public int size() {
+        return candidates.size() + pinned.size();
+    }
+
+    private static OCSPCheck withoutStapledResponse(OCSPCheck check) {
+        return check.getStapledResponse() == null ? check
+                : new OCSPCheck(check.getCertificate(), check.getIssuerCertificate());
+    }
+}
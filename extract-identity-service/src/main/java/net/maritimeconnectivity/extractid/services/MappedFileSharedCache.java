@@ -0,0 +1,328 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A shared cache in a memory-mapped file, so the cached values survive restarts of the service.
+ * Values are appended to the file as records, and an index of the records in memory is rebuilt
+ * from the file when it is opened. A record that was cut off when the process stopped is detected
+ * by its checksum, and the file is used up to that record. When the file is full it is compacted
+ * into a new file that only has the newest unexpired record of each key, and if that does not make
+ * room it is emptied. The file can only be used by one process at a time, which is ensured by a lock
+ * on a lock file next to it that is held for as long as the cache is open, including while the file
+ * is replaced. The header holds a generation number that is raised each time the file is compacted
+ * or emptied, so a reader of the file can tell that the records it indexed have been moved.
+ */
+@Slf4j
+public class MappedFileSharedCache implements SharedCache {
+
+    private static final int MAGIC = 0x45584944;
+    private static final int VERSION = 2;
+    // magic, version and generation
+    private static final int HEADER_LENGTH = 16;
+    // length, expiry, key length and value length before the key and value, and the checksum after them
+    private static final int RECORD_OVERHEAD = 4 + 8 + 2 + 4 + 4;
+
+    private final Path path;
+    private final int size;
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final FileChannel lockChannel;
+    private final FileLock fileLock;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long generation;
+    private int end;
+
+    /**
+     * Opens the file, or creates it if it does not exist
+     * @param path the file
+     * @param size the size of the file in bytes, at most 2 GB
+     */
+    public MappedFileSharedCache(Path path, long size) throws IOException {
+        if (size <= HEADER_LENGTH || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The size of a shared cache file must be above " + HEADER_LENGTH
+                    + " bytes and at most 2 GB");
+        }
+        this.path = path;
+        this.size = (int) size;
+        // the cache file itself is replaced when it is compacted, so the lock is taken on a file that is not
+        lockChannel = FileChannel.open(Paths.get(path + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            fileLock = lockChannel.tryLock();
+            if (fileLock == null) {
+                throw new IOException("The shared cache file " + path + " is used by another process");
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            // a file of another size is mapped at the configured size, records beyond it are dropped
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            lockChannel.close();
+            throw e;
+        }
+        int records = load();
+        log.info("Opened shared cache {} at generation {} with {} entries", path, generation, records);
+    }
+
+    /**
+     * Reads the records of the file into the index
+     * @return the number of records that were read
+     */
+    private int load() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            clear();
+            return 0;
+        }
+        generation = buffer.getLong(8);
+        long now = System.currentTimeMillis();
+        int records = 0;
+        int offset = HEADER_LENGTH;
+        while (offset + RECORD_OVERHEAD <= size) {
+            int length = buffer.getInt(offset);
+            if (length < RECORD_OVERHEAD || length > size - offset || !hasValidChecksum(offset, length)) {
+                break;
+            }
+            if (getExpiresAt(offset) > now) {
+                index.put(getKey(offset), offset);
+            } else {
+                index.remove(getKey(offset));
+            }
+            records++;
+            offset += length;
+        }
+        end = offset;
+        return records;
+    }
+
+    private void clear() {
+        index.clear();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, ++generation);
+        end = HEADER_LENGTH;
+        // the end of the records is found by the first record that is not valid
+        buffer.putInt(end, 0);
+    }
+
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<String, byte[]> values = new HashMap<>();
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            for (String key : keys) {
+                Integer offset = index.get(key);
+                if (offset == null) {
+                    continue;
+                }
+                if (getExpiresAt(offset) <= now) {
+                    index.remove(key, offset);
+                    continue;
+                }
+                values.put(key, getValue(offset));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return values;
+    }
+
+    @Override
+    public void put(String key, byte[] value, long expiresAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_OVERHEAD + keyBytes.length + value.length;
+        if (keyBytes.length > Short.MAX_VALUE || length > size - HEADER_LENGTH) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (end + length > size) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    log.warn("Could not compact shared cache {}", path, e);
+                }
+                if (end + length > size) {
+                    log.info("Shared cache {} is full, emptying it", path);
+                    clear();
+                }
+            }
+            int offset = end;
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset);
+            record.putInt(length);
+            record.putLong(expiresAt);
+            record.putShort((short) keyBytes.length);
+            record.put(keyBytes);
+            record.putInt(value.length);
+            record.put(value);
+            record.putInt(checksum(offset, length));
+            end = offset + length;
+            if (end + 4 <= size) {
+                buffer.putInt(end, 0);
+            }
+            index.put(key, offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the unexpired records of the index to a new file that replaces this one. The new file is
+     * kept open and mapped across the move, so it never has to be opened again; if it cannot be moved
+     * the file in use is left as it was.
+     */
+    private void compact() throws IOException {
+        Path compacted = Paths.get(path + ".compact");
+        long now = System.currentTimeMillis();
+        Map<String, Integer> live = new HashMap<>();
+        FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer target;
+        int offset = HEADER_LENGTH;
+        try {
+            target = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            target.putInt(0, MAGIC);
+            target.putInt(4, VERSION);
+            target.putLong(8, generation + 1);
+            for (Map.Entry<String, Integer> entry : index.entrySet()) {
+                int source = entry.getValue();
+                if (getExpiresAt(source) <= now) {
+                    continue;
+                }
+                int length = buffer.getInt(source);
+                ByteBuffer record = buffer.duplicate();
+                record.position(source).limit(source + length);
+                target.position(offset);
+                target.put(record);
+                live.put(entry.getKey(), offset);
+                offset += length;
+            }
+            if (offset + 4 <= size) {
+                target.putInt(offset, 0);
+            }
+            target.force();
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            Files.deleteIfExists(compacted);
+            throw e;
+        }
+
+        FileChannel previous = channel;
+        channel = out;
+        buffer = target;
+        generation++;
+        index.clear();
+        index.putAll(live);
+        end = offset;
+        try {
+            previous.close();
+        } catch (IOException e) {
+            log.warn("Could not close the replaced shared cache file {}", path, e);
+        }
+    }
+
+    private long getExpiresAt(int offset) {
+        return buffer.getLong(offset + 4);
+    }
+
+    private String getKey(int offset) {
+        byte[] key = new byte[buffer.getShort(offset + 12)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + 14);
+        record.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private byte[] getValue(int offset) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + 14 + buffer.getShort(offset + 12));
+        byte[] value = new byte[record.getInt()];
+        record.get(value);
+        return value;
+    }
+
+    private boolean hasValidChecksum(int offset, int length) {
+        return buffer.getInt(offset + length - 4) == checksum(offset, length);
+    }
+
+    private int checksum(int offset, int length) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset).limit(offset + length - 4);
+        byte[] bytes = new byte[length - 4];
+        record.get(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return the number of keys with a value, which may include values that have just expired
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of times the file has been compacted or emptied since it was created
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+            fileLock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * A certificate whose revocation status should be checked, together with the certificate of its issuer
+ * and optionally an OCSP response for it that the client already has
+ */
+@Getter
+@AllArgsConstructor
+public class OCSPCheck {
+    private final X509Certificate certificate;
+    private final X509Certificate issuerCertificate;
+    // DER encoded OCSP response that is used instead of asking the responder if it is valid, or null
+    private final byte[] stapledResponse;
+
+    public OCSPCheck(X509Certificate certificate, X509Certificate issuerCertificate) {
+        this(certificate, issuerCertificate, null);
+    }
+}
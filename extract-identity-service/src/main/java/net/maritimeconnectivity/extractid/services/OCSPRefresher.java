@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.config.OCSPProperties;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.model.OCSPResult;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import net.maritimeconnectivity.extractid.utils.OCSPUtils;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import net.maritimeconnectivity.pki.ocsp.OCSPValidationException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the OCSP responses of the most often checked certificates in the cache. Responses that
+ * are about to expire are renewed in the background, so checks of these certificates do not wait
+ * for the responder when a response expires. Certificates that are configured for pre-warming are
+ * loaded into the certificate and OCSP response caches at startup, and are always renewed.
+ */
+@Slf4j
+public class OCSPRefresher {
+
+    private final OCSPService ocspService;
+    private final OCSPResponseCache responseCache;
+    private final CertificateCache certificateCache;
+    private final HotCertificates hotCertificates;
+    private final OCSPProperties properties;
+    private final ExtractionMetrics metrics;
+    private ScheduledExecutorService scheduler;
+
+    public OCSPRefresher(OCSPService ocspService, OCSPResponseCache responseCache, CertificateCache certificateCache,
+                         HotCertificates hotCertificates, OCSPProperties properties, ExtractionMetrics metrics) {
+        this.ocspService = ocspService;
+        this.responseCache = responseCache;
+        this.certificateCache = certificateCache;
+        this.hotCertificates = hotCertificates;
+        this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Loads the configured certificates and waits for their OCSP responses, and schedules the renewals
+     */
+    public void start() {
+        prewarm();
+        if (properties.getRefresh().isEnabled()) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ocsp-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = properties.getRefresh().getInterval().toMillis();
+            scheduler.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Asks the responders about the hot certificates that have no cached response, or whose response
+     * expires soon and was not fetched during the last interval
+     * @return a future that completes when all the responses have been renewed or could not be
+     */
+    public CompletableFuture<Void> refresh() {
+        // an exception escaping a scheduled run would cancel all the later renewals
+        try {
+            long now = System.currentTimeMillis();
+            long beforeExpiry = properties.getRefresh().getBeforeExpiry().toMillis();
+            long interval = properties.getRefresh().getInterval().toMillis();
+            List<OCSPCheck> due = new ArrayList<>();
+            for (Map.Entry<String, OCSPCheck> entry : hotCertificates.getHottest().entrySet()) {
+                CachedOCSPResponse cached = responseCache.get(entry.getKey());
+                if (cached == null || (responseCache.getValidUntil(cached) - now <= beforeExpiry
+                        && now - cached.getFetchedAt() >= interval)) {
+                    due.add(entry.getValue());
+                }
+            }
+            if (due.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            log.debug("Renewing the OCSP responses of {} certificates", due.size());
+            return count(ocspService.refreshStatuses(due));
+        } catch (RuntimeException e) {
+            log.error("Could not renew the OCSP responses of the hot certificates", e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private CompletableFuture<Void> count(List<CompletableFuture<OCSPResult>> results) {
+        CompletableFuture<?>[] counted = new CompletableFuture<?>[results.size()];
+        for (int i = 0; i < counted.length; i++) {
+            counted[i] = results.get(i).handle((result, e) -> {
+                // the responder could not be asked, or gave no usable answer
+                boolean renewed = e == null && !CertStatus.UNKNOWN.name().equals(result.getCertStatus());
+                metrics.countOcspRefresh(renewed ? "renewed" : "failed");
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(counted);
+    }
+
+    private void prewarm() {
+        List<String> files = properties.getPrewarm().getCertificates();
+        if (files.isEmpty()) {
+            return;
+        }
+        List<OCSPCheck> checks = new ArrayList<>(files.size());
+        for (String file : files) {
+            List<ParsedCertificate> chain = new ArrayList<>(2);
+            try {
+                String pem = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.US_ASCII);
+                for (String block : CertificateUtils.splitPemBundle(pem)) {
+                    ParsedCertificate parsed = certificateCache.getFromPem(block);
+                    if (parsed == null) {
+                        throw new IOException("The file contains an invalid certificate");
+                    }
+                    chain.add(parsed);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load certificate to pre-warm " + file, e);
+            }
+            if (chain.size() < 2) {
+                log.warn("No issuer certificate in {}, only its identity is pre-warmed", file);
+                continue;
+            }
+            OCSPCheck check = new OCSPCheck(chain.get(0).getCertificate(), chain.get(1).getCertificate());
+            try {
+                hotCertificates.pin(OCSPResponseCache.getKey(OCSPUtils.createCertificateId(check.getCertificate(),
+                        check.getIssuerCertificate())), check);
+            } catch (OCSPValidationException e) {
+                throw new IllegalStateException("Could not load certificate to pre-warm " + file, e);
+            }
+            checks.add(check);
+        }
+        if (checks.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            count(ocspService.checkStatuses(checks))
+                    .get(properties.getPrewarm().getTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Pre-warmed the OCSP responses of {} certificates in {} ms", checks.size(),
+                    System.currentTimeMillis() - start);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Not all OCSP responses could be pre-warmed, the rest are fetched when they are first checked", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
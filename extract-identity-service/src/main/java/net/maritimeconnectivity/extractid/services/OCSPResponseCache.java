@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.utils.CertificateUtils;
+import org.bouncycastle.cert.ocsp.CertificateID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of verified OCSP responses keyed by issuer key hash and serial number. An entry is valid
+ * until the nextUpdate of the response, or for the configured maximum age if the responder did
+ * not give a nextUpdate. Responses are also put in a shared cache, where other replicas of the
+ * service, or this one after a restart, can find them without asking the responder again.
+ */
+@Slf4j
+public class OCSPResponseCache {
+
+    private static final String SHARED_KEY_PREFIX = "ocsp:";
+    private static final int SHARED_FORMAT_VERSION = 2;
+    // the version, the time the response was fetched and the length of the response
+    private static final int SHARED_HEADER_LENGTH = 1 + 8 + 4;
+
+    private final Cache<String, CachedOCSPResponse> cache;
+    private final SharedCache shared;
+    private final long maxAgeMillis;
+
+    public OCSPResponseCache(long maxSize, Duration maxAge) {
+        this(maxSize, maxAge, ExtractionMetrics.noop());
+    }
+
+    public OCSPResponseCache(long maxSize, Duration maxAge, ExtractionMetrics metrics) {
+        this(maxSize, maxAge, SharedCache.none(), metrics);
+    }
+
+    public OCSPResponseCache(long maxSize, Duration maxAge, SharedCache shared, ExtractionMetrics metrics) {
+        this.shared = shared;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ResponseExpiry(maxAgeMillis))
+                .recordStats()
+                .build();
+        metrics.monitor(cache, "ocspResponses");
+    }
+
+    public static String getKey(CertificateID certId) {
+        return CertificateUtils.toHex(certId.getIssuerKeyHash()) + ":" + certId.getSerialNumber().toString(16);
+    }
+
+    public CachedOCSPResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(String key, CachedOCSPResponse response) {
+        cache.put(key, response);
+        shared.put(SHARED_KEY_PREFIX + key, encode(response), getValidUntil(response, maxAgeMillis));
+    }
+
+    /**
+     * Looks up responses in the shared cache, and keeps the ones that were found in memory. Anything
+     * that can write to the shared cache could have put a response there, so only the signed response
+     * is read back and the verifier decides what it says.
+     * @param keys     the keys of the responses, as given by {@link #getKey(CertificateID)}
+     * @param verifier checks the signed response found for a key
+     * @return         the verified responses that are still valid, by key
+     */
+    public Map<String, CachedOCSPResponse> getShared(Collection<String> keys, SharedResponseVerifier verifier) {
+        Map<String, String> sharedKeys = new HashMap<>();
+        for (String key : keys) {
+            sharedKeys.put(SHARED_KEY_PREFIX + key, key);
+        }
+        Map<String, CachedOCSPResponse> responses = new HashMap<>();
+        shared.getAll(sharedKeys.keySet()).forEach((sharedKey, value) -> {
+            String key = sharedKeys.get(sharedKey);
+            CachedOCSPResponse response = decode(key, value, verifier);
+            if (response != null && getValidUntil(response, maxAgeMillis) > System.currentTimeMillis()) {
+                cache.put(key, response);
+                responses.put(key, response);
+            }
+        });
+        return responses;
+    }
+
+    private static byte[] encode(CachedOCSPResponse response) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(response.getEncodedResponse().length + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(SHARED_FORMAT_VERSION);
+            out.writeLong(response.getFetchedAt());
+            out.writeInt(response.getEncodedResponse().length);
+            out.write(response.getEncodedResponse());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CachedOCSPResponse decode(String key, byte[] value, SharedResponseVerifier verifier) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            if (in.readByte() != SHARED_FORMAT_VERSION) {
+                return null;
+            }
+            long fetchedAt = in.readLong();
+            int length = in.readInt();
+            // the length is not trusted, so a corrupt entry cannot make this allocate more than it holds
+            if (length < 0 || length > value.length - SHARED_HEADER_LENGTH) {
+                log.warn("Ignoring shared OCSP response with a length of {} in an entry of {} bytes", length,
+                        value.length);
+                return null;
+            }
+            byte[] encoded = new byte[length];
+            in.readFully(encoded);
+            return verifier.verify(key, encoded, fetchedAt);
+        } catch (IOException e) {
+            log.warn("Ignoring shared OCSP response that could not be read", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch until which a response is kept in the cache
+     */
+    public long getValidUntil(CachedOCSPResponse response) {
+        return getValidUntil(response, maxAgeMillis);
+    }
+
+    private static long getValidUntil(CachedOCSPResponse response, long maxAgeMillis) {
+        return response.getNextUpdate() != null ? response.getNextUpdate().getTime()
+                : response.getFetchedAt() + maxAgeMillis;
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Checks a signed OCSP response read from the shared cache
+     */
+    @FunctionalInterface
+    public interface SharedResponseVerifier {
+
+        /**
+         * @param key             the key the response was found under
+         * @param encodedResponse the DER encoded basic OCSP response
+         * @param fetchedAt       when the response was said to be fetched, in milliseconds since the epoch
+         * @return                the answer of the response, or null if it is not to be used
+         */
+        CachedOCSPResponse verify(String key, byte[] encodedResponse, long fetchedAt);
+    }
+
+    private static class ResponseExpiry implements Expiry<String, CachedOCSPResponse> {
+
+        private final long maxAgeMillis;
+
+        ResponseExpiry(long maxAgeMillis) {
+            this.maxAgeMillis = maxAgeMillis;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedOCSPResponse value, long currentTime) {
+            long validUntil = getValidUntil(value, maxAgeMillis);
+            return Math.max(0, Duration.ofMillis(validUntil - System.currentTimeMillis()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedOCSPResponse value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedOCSPResponse value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
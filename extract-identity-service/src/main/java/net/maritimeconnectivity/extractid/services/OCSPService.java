@@ -0,0 +1,517 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.extractid.config.OCSPProperties;
+import net.maritimeconnectivity.extractid.exceptions.OCSPResponderBusyException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.model.OCSPResult;
+import net.maritimeconnectivity.extractid.utils.OCSPUtils;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import net.maritimeconnectivity.pki.ocsp.OCSPClient;
+import net.maritimeconnectivity.pki.ocsp.OCSPValidationException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Non-blocking OCSP client that shares one pooled HTTP client between all requests and limits
+ * the number of requests that may be outstanding towards each responder
+ */
+@Slf4j
+public class OCSPService {
+
+    private static final ContentType OCSP_REQUEST_TYPE = ContentType.create("application/ocsp-request");
+    private static final String OCSP_RESPONSE_TYPE = "application/ocsp-response";
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final OCSPResponseCache responseCache;
+    private final OCSPProperties properties;
+    private final ExtractionMetrics metrics;
+    private final ConcurrentMap<String, Semaphore> responderPermits = new ConcurrentHashMap<>();
+    private final SingleFlight<String, CachedOCSPResponse> inFlightChecks;
+    private final HotCertificates hotCertificates;
+
+    public OCSPService(CloseableHttpAsyncClient httpClient, OCSPResponseCache responseCache, OCSPProperties properties) {
+        this(httpClient, responseCache, properties, ExtractionMetrics.noop());
+    }
+
+    public OCSPService(CloseableHttpAsyncClient httpClient, OCSPResponseCache responseCache, OCSPProperties properties,
+                       ExtractionMetrics metrics) {
+        this(httpClient, responseCache, properties, metrics, new HotCertificates(0));
+    }
+
+    public OCSPService(CloseableHttpAsyncClient httpClient, OCSPResponseCache responseCache, OCSPProperties properties,
+                       ExtractionMetrics metrics, HotCertificates hotCertificates) {
+        this.httpClient = httpClient;
+        this.responseCache = responseCache;
+        this.properties = properties;
+        this.metrics = metrics;
+        this.inFlightChecks = new SingleFlight<>(metrics.coalescedCounter("ocsp"));
+        this.hotCertificates = hotCertificates;
+    }
+
+    /**
+     * Checks the revocation status of a certificate using the OCSP responder given in the certificate.
+     * Answers are served from the response cache while they are valid, and concurrent checks of the
+     * same certificate share one request to the responder. An OCSP response given with the check is
+     * verified locally and used instead of asking the responder, unless it is not valid or stale. Failures to reach the responder or to
+     * validate its answer result in the status UNKNOWN.
+     * @param cert       the certificate to check
+     * @param issuerCert the certificate of the CA that issued it
+     * @return           a future that completes with the result, or fails with
+     *                   {@link OCSPResponderBusyException} if the responder has too many outstanding requests
+     */
+    public CompletableFuture<OCSPResult> checkStatus(X509Certificate cert, X509Certificate issuerCert) {
+        return checkStatuses(Collections.singletonList(new OCSPCheck(cert, issuerCert))).get(0);
+    }
+
+    /**
+     * Checks the revocation status of many certificates. The certificates that are not in the response
+     * cache are grouped by OCSP responder, and each responder is asked about many certificates in one
+     * request. Different responders are queried concurrently.
+     * @param checks the certificates to check
+     * @return       a future for each check, in the order they were given, that behaves like the one
+     *               returned by {@link #checkStatus(X509Certificate, X509Certificate)}
+     */
+    public List<CompletableFuture<OCSPResult>> checkStatuses(List<OCSPCheck> checks) {
+        List<CompletableFuture<OCSPResult>> results = new ArrayList<>(checks.size());
+        // grouped by the external form of the URL since URL.equals resolves host names
+        Map<String, List<PendingCheck>> toFetch = new LinkedHashMap<>();
+        for (OCSPCheck check : checks) {
+            results.add(lookup(check, toFetch, false));
+        }
+        answerFromSharedCache(toFetch);
+        toFetch.values().forEach(pending -> fetchAll(pending.get(0).ocspUrl, pending));
+        return results;
+    }
+
+    /**
+     * Asks the responders about certificates whose cached responses are about to expire, without
+     * looking at the caches. The new responses replace the cached ones. The checks are not counted
+     * in the {@link HotCertificates}.
+     * @param checks the certificates to check
+     * @return       a future for each check, in the order they were given, that behaves like the one
+     *               returned by {@link #checkStatus(X509Certificate, X509Certificate)}
+     */
+    public List<CompletableFuture<OCSPResult>> refreshStatuses(List<OCSPCheck> checks) {
+        List<CompletableFuture<OCSPResult>> results = new ArrayList<>(checks.size());
+        Map<String, List<PendingCheck>> toFetch = new LinkedHashMap<>();
+        for (OCSPCheck check : checks) {
+            results.add(lookup(check, toFetch, true));
+        }
+        toFetch.values().forEach(pending -> fetchAll(pending.get(0).ocspUrl, pending));
+        return results;
+    }
+
+    /**
+     * Answers a check from the cache, from the response given with it or from a request that is
+     * already in flight, or else adds it to the checks that should be sent to its responder. When
+     * refreshing, only requests in flight are used.
+     */
+    private CompletableFuture<OCSPResult> lookup(OCSPCheck check, Map<String, List<PendingCheck>> toFetch,
+                                                 boolean refresh) {
+        X509Certificate cert = check.getCertificate();
+        URL ocspUrl = OCSPClient.getOcspUrlFromCertificate(cert);
+
+        CertificateID certId;
+        try {
+            certId = OCSPUtils.createCertificateId(cert, check.getIssuerCertificate());
+        } catch (OCSPValidationException e) {
+            log.error("Could not create OCSP request", e);
+            return CompletableFuture.completedFuture(new OCSPResult(ocspUrl, CertStatus.UNKNOWN));
+        }
+
+        long startedAt = System.currentTimeMillis();
+        String key = OCSPResponseCache.getKey(certId);
+        CachedOCSPResponse cached = refresh ? null : responseCache.get(key);
+        if (cached != null) {
+            hotCertificates.record(key, check);
+            return CompletableFuture.completedFuture(
+                    new OCSPResult(ocspUrl, cached.getStatus(), true, cached.getAgeSeconds(), cached.getNextUpdate()));
+        }
+
+        // the issuer comes from the caller, and a response signed with its key is only worth something if it is real
+        if (!isIssuer(check.getIssuerCertificate(), cert)) {
+            log.debug("Certificate {} was not issued by the given issuer {}", cert.getSerialNumber(),
+                    check.getIssuerCertificate().getSubjectX500Principal().getName());
+            return CompletableFuture.completedFuture(new OCSPResult(ocspUrl, CertStatus.UNKNOWN));
+        }
+        if (!refresh) {
+            hotCertificates.record(key, check);
+        }
+
+        if (check.getStapledResponse() != null && !refresh) {
+            CachedOCSPResponse stapled = verifyStapled(check, certId);
+            if (stapled != null) {
+                responseCache.put(key, stapled);
+                OCSPResult result = new OCSPResult(ocspUrl, stapled.getStatus(), false, stapled.getAgeSeconds(),
+                        stapled.getNextUpdate());
+                result.setStapled(true);
+                return CompletableFuture.completedFuture(result);
+            }
+        }
+
+        if (ocspUrl == null) {
+            log.warn("Certificate {} does not contain an OCSP responder URL", cert.getSerialNumber());
+            return CompletableFuture.completedFuture(new OCSPResult(null, CertStatus.UNKNOWN));
+        }
+
+        CompletableFuture<CachedOCSPResponse> shared = inFlightChecks.executeAsync(key, () -> {
+            CompletableFuture<CachedOCSPResponse> pending = new CompletableFuture<>();
+            toFetch.computeIfAbsent(ocspUrl.toExternalForm(), u -> new ArrayList<>())
+                    .add(new PendingCheck(ocspUrl, key, certId, check.getIssuerCertificate(), pending));
+            return pending;
+        });
+
+        return shared.handle((response, e) -> {
+            if (e != null) {
+                rethrowIfBusy(e);
+                log.error("OCSP request to {} failed", ocspUrl, e);
+                return new OCSPResult(ocspUrl, CertStatus.UNKNOWN);
+            }
+            // a response from the shared cache was fetched before this check started
+            return new OCSPResult(ocspUrl, response.getStatus(), response.getFetchedAt() < startedAt,
+                    response.getAgeSeconds(), response.getNextUpdate());
+        });
+    }
+
+    /**
+     * Checks that a certificate names the issuer certificate as its issuer and is signed with its key. The
+     * responses of the response cache have only been stored after this check, so a hit needs no check.
+     */
+    private static boolean isIssuer(X509Certificate issuerCert, X509Certificate cert) {
+        if (!cert.getIssuerX500Principal().equals(issuerCert.getSubjectX500Principal())) {
+            return false;
+        }
+        try {
+            cert.verify(issuerCert.getPublicKey());
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks that the OCSP response given with a check is about its certificate, is signed by its
+     * issuer or a responder the issuer has authorized, and is fresh. A response without a nextUpdate
+     * is fresh for the maximum age of the response cache after its thisUpdate.
+     * @return the response, or null if the responder should be asked instead
+     */
+    private CachedOCSPResponse verifyStapled(OCSPCheck check, CertificateID certId) {
+        try {
+            CachedOCSPResponse response = verifyResponse(OCSPUtils.parseResponse(check.getStapledResponse()),
+                    certId, check.getIssuerCertificate(), -1);
+            metrics.countStapledResponse("verified");
+            return response;
+        } catch (OCSPValidationException | IOException e) {
+            log.debug("Not using the OCSP response given for certificate {}: {}",
+                    check.getCertificate().getSerialNumber(), e.getMessage());
+            metrics.countStapledResponse("rejected");
+            return null;
+        }
+    }
+
+    /**
+     * Checks that an OCSP response is about a certificate, is signed by its issuer or a responder the
+     * issuer has authorized, and is fresh
+     * @param fetchedAt when the response was fetched, or -1 to count its age from its thisUpdate, so a
+     *                  response without nextUpdate is not kept for longer than the maximum age
+     * @return          the answer of the response
+     */
+    private CachedOCSPResponse verifyResponse(BasicOCSPResp basicResp, CertificateID certId, X509Certificate issuerCert,
+                                              long fetchedAt) throws OCSPValidationException, IOException {
+        SingleResp singleResp = OCSPUtils.findResponse(basicResp, certId);
+        long now = System.currentTimeMillis();
+        long thisUpdate = singleResp.getThisUpdate().getTime();
+        if (singleResp.getNextUpdate() == null && thisUpdate + properties.getCache().getMaxAge().toMillis() < now) {
+            throw new OCSPValidationException("OCSP response without nextUpdate is older than the maximum age");
+        }
+        // the signature is checked last since it is the most expensive
+        OCSPUtils.verifySignature(basicResp, issuerCert);
+        return new CachedOCSPResponse(basicResp.getEncoded(), OCSPUtils.toCertStatus(singleResp),
+                singleResp.getThisUpdate(), singleResp.getNextUpdate(),
+                Math.min(fetchedAt < 0 ? thisUpdate : fetchedAt, now));
+    }
+
+    /**
+     * Completes the pending checks whose responses another replica has already fetched, and removes
+     * them from the checks that are sent to the responders. All responders are looked up at once.
+     */
+    private void answerFromSharedCache(Map<String, List<PendingCheck>> toFetch) {
+        if (toFetch.isEmpty()) {
+            return;
+        }
+        Map<String, PendingCheck> checks = new HashMap<>();
+        toFetch.values().forEach(pending -> pending.forEach(check -> checks.putIfAbsent(check.key, check)));
+        Map<String, CachedOCSPResponse> found = responseCache.getShared(checks.keySet(), (key, encoded, fetchedAt) -> {
+            PendingCheck check = checks.get(key);
+            try {
+                return verifyResponse(OCSPUtils.parseBasicResponse(encoded), check.certId, check.issuerCert, fetchedAt);
+            } catch (OCSPValidationException | IOException e) {
+                log.warn("Ignoring shared OCSP response for {} that could not be verified: {}", key, e.getMessage());
+                return null;
+            }
+        });
+        if (found.isEmpty()) {
+            return;
+        }
+        for (List<PendingCheck> pending : toFetch.values()) {
+            pending.removeIf(check -> {
+                CachedOCSPResponse response = found.get(check.key);
+                return response != null && check.future.complete(response);
+            });
+        }
+        toFetch.values().removeIf(List::isEmpty);
+    }
+
+    /**
+     * Sends the pending checks for one responder in requests of a limited size. A few requests are
+     * sent at a time so a large batch does not use up all the permits for the responder.
+     */
+    private void fetchAll(URL ocspUrl, List<PendingCheck> pending) {
+        OCSPProperties.Batch batch = properties.getBatch();
+        int chunkSize = Math.max(1, batch.getMaxRequestsPerQuery());
+        List<List<PendingCheck>> chunks = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i += chunkSize) {
+            chunks.add(pending.subList(i, Math.min(i + chunkSize, pending.size())));
+        }
+
+        int lanes = Math.max(1, Math.min(batch.getParallelQueriesPerResponder(), chunks.size()));
+        for (int lane = 0; lane < lanes; lane++) {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < chunks.size(); i += lanes) {
+                List<PendingCheck> chunk = chunks.get(i);
+                chain = chain.thenCompose(v -> fetch(ocspUrl, chunk));
+            }
+        }
+    }
+
+    /**
+     * Asks a responder about several certificates in one request and completes the pending check of
+     * each of them. The returned future always completes normally.
+     */
+    private CompletableFuture<Void> fetch(URL ocspUrl, List<PendingCheck> chunk) {
+        OCSPReq ocspReq;
+        try {
+            OCSPReqBuilder builder = new OCSPReqBuilder();
+            for (PendingCheck check : chunk) {
+                builder.addRequest(check.certId);
+            }
+            ocspReq = builder.build();
+        } catch (OCSPException e) {
+            chunk.forEach(check -> check.future.completeExceptionally(e));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return query(ocspUrl, ocspReq).handle((basicResp, e) -> {
+            if (e != null) {
+                chunk.forEach(check -> check.future.completeExceptionally(e));
+                return null;
+            }
+            byte[] encoded;
+            try {
+                encoded = basicResp.getEncoded();
+            } catch (IOException ioe) {
+                chunk.forEach(check -> check.future.completeExceptionally(ioe));
+                return null;
+            }
+
+            // the signature only has to be checked once for each issuer in the request
+            Map<X509Certificate, OCSPValidationException> verified = new HashMap<>();
+            for (PendingCheck check : chunk) {
+                try {
+                    if (!verified.containsKey(check.issuerCert)) {
+                        verified.put(check.issuerCert, verify(basicResp, check.issuerCert));
+                    }
+                    if (verified.get(check.issuerCert) != null) {
+                        throw verified.get(check.issuerCert);
+                    }
+                    SingleResp singleResp = OCSPUtils.findResponse(basicResp, check.certId);
+                    CachedOCSPResponse response = new CachedOCSPResponse(encoded,
+                            OCSPUtils.toCertStatus(singleResp), singleResp.getThisUpdate(),
+                            singleResp.getNextUpdate(), System.currentTimeMillis());
+                    responseCache.put(check.key, response);
+                    check.future.complete(response);
+                } catch (OCSPValidationException ve) {
+                    metrics.countOcspError(getResponderKey(ocspUrl), ve);
+                    check.future.completeExceptionally(ve);
+                }
+            }
+            return null;
+        });
+    }
+
+    private static OCSPValidationException verify(BasicOCSPResp basicResp, X509Certificate issuerCert) {
+        try {
+            OCSPUtils.verifySignature(basicResp, issuerCert);
+            return null;
+        } catch (OCSPValidationException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Sends an OCSP request to a responder without blocking the calling thread
+     * @param ocspUrl the URL of the responder
+     * @param ocspReq the request
+     * @return        a future that completes with the parsed but not yet verified response
+     */
+    public CompletableFuture<BasicOCSPResp> query(URL ocspUrl, OCSPReq ocspReq) {
+        String responder = getResponderKey(ocspUrl);
+        Semaphore semaphore = responderPermits.computeIfAbsent(responder, r -> new Semaphore(getMaxInFlight(ocspUrl)));
+        CompletableFuture<BasicOCSPResp> future = new CompletableFuture<>();
+        if (!semaphore.tryAcquire()) {
+            OCSPResponderBusyException busy = new OCSPResponderBusyException(responder);
+            metrics.countOcspError(responder, busy);
+            future.completeExceptionally(busy);
+            return future;
+        }
+        long start = System.nanoTime();
+        // the returned stage completes after the permit is released and the request is measured
+        CompletableFuture<BasicOCSPResp> measured = future.whenComplete((basicResp, e) -> {
+            semaphore.release();
+            metrics.recordOcspRequest(responder, e == null ? "success" : "error", start);
+            if (e != null) {
+                metrics.countOcspError(responder, e);
+            }
+        });
+
+        HttpPost post;
+        try {
+            post = new HttpPost(ocspUrl.toURI());
+            post.setEntity(new ByteArrayEntity(ocspReq.getEncoded(), OCSP_REQUEST_TYPE));
+        } catch (URISyntaxException | IOException e) {
+            future.completeExceptionally(e);
+            return measured;
+        }
+        post.setHeader(HttpHeaders.ACCEPT, OCSP_RESPONSE_TYPE);
+        post.setConfig(getRequestConfig(ocspUrl));
+
+        httpClient.execute(post, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    if (statusCode != HttpStatus.SC_OK || response.getEntity() == null) {
+                        throw new OCSPValidationException("OCSP responder answered with HTTP status " + statusCode);
+                    }
+                    future.complete(OCSPUtils.parseResponse(EntityUtils.toByteArray(response.getEntity())));
+                } catch (OCSPValidationException | IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return measured;
+    }
+
+    private static void rethrowIfBusy(Throwable e) {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        if (cause instanceof OCSPResponderBusyException) {
+            throw (OCSPResponderBusyException) cause;
+        }
+    }
+
+    private static class PendingCheck {
+        private final URL ocspUrl;
+        private final String key;
+        private final CertificateID certId;
+        private final X509Certificate issuerCert;
+        private final CompletableFuture<CachedOCSPResponse> future;
+
+        private PendingCheck(URL ocspUrl, String key, CertificateID certId, X509Certificate issuerCert,
+                             CompletableFuture<CachedOCSPResponse> future) {
+            this.ocspUrl = ocspUrl;
+            this.key = key;
+            this.certId = certId;
+            this.issuerCert = issuerCert;
+            this.future = future;
+        }
+    }
+
+    private static String getResponderKey(URL ocspUrl) {
+        int port = ocspUrl.getPort() != -1 ? ocspUrl.getPort() : ocspUrl.getDefaultPort();
+        return ocspUrl.getHost() + ":" + port;
+    }
+
+    private RequestConfig getRequestConfig(URL ocspUrl) {
+        OCSPProperties.Responder responder = properties.getResponders().get(ocspUrl.getHost());
+        Duration connectTimeout = properties.getConnectTimeout();
+        Duration readTimeout = properties.getReadTimeout();
+        if (responder != null && responder.getConnectTimeout() != null) {
+            connectTimeout = responder.getConnectTimeout();
+        }
+        if (responder != null && responder.getReadTimeout() != null) {
+            readTimeout = responder.getReadTimeout();
+        }
+        return RequestConfig.custom()
+                .setConnectTimeout((int) connectTimeout.toMillis())
+                .setConnectionRequestTimeout((int) connectTimeout.toMillis())
+                .setSocketTimeout((int) readTimeout.toMillis())
+                .build();
+    }
+
+    private int getMaxInFlight(URL ocspUrl) {
+        OCSPProperties.Responder responder = properties.getResponders().get(ocspUrl.getHost());
+        if (responder != null && responder.getMaxInFlight() != null) {
+            return responder.getMaxInFlight();
+        }
+        return properties.getMaxInFlightPerResponder();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.Getter;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.pki.PKIIdentity;
+
+import java.security.cert.X509Certificate;
+import java.util.function.Supplier;
+
+/**
+ * A certificate together with everything that has been extracted from it. The identity and the
+ * attributes are extracted the first time they are asked for, so the revocation and validation
+ * checks, which only need the certificate, do not depend on the extraction succeeding.
+ */
+public class ParsedCertificate {
+    @Getter
+    private final String fingerprint;
+    @Getter
+    private final X509Certificate certificate;
+    private final Supplier<PKIIdentity> identityExtractor;
+    private volatile PKIIdentity identity;
+    private volatile X509CertAttribute attributes;
+
+    ParsedCertificate(String fingerprint, X509Certificate certificate, Supplier<PKIIdentity> identityExtractor) {
+        this.fingerprint = fingerprint;
+        this.certificate = certificate;
+        this.identityExtractor = identityExtractor;
+    }
+
+    /**
+     * @return the MCP identity of the certificate
+     * @throws RuntimeException if the identity cannot be extracted, in which case it is tried again the
+     *                          next time it is asked for
+     */
+    public PKIIdentity getIdentity() {
+        PKIIdentity result = identity;
+        if (result == null) {
+            synchronized (this) {
+                result = identity;
+                if (result == null) {
+                    result = identityExtractor.get();
+                    identity = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the X.509 attributes of the certificate
+     */
+    public X509CertAttribute getAttributes() {
+        X509CertAttribute result = attributes;
+        if (result == null) {
+            // building the attributes twice is harmless, so there is no need to lock
+            result = new X509CertAttribute(certificate);
+            attributes = result;
+        }
+        return result;
+    }
+}
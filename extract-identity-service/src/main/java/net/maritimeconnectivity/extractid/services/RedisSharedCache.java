@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A shared cache in Redis, or any server that speaks its protocol, which all replicas of the service
+ * use. Values are written in the background so a slow server does not hold up requests, and writes
+ * are dropped if they queue up. When the server cannot be reached the cache is not used for a while,
+ * so requests do not each wait for the timeout.
+ */
+@Slf4j
+public class RedisSharedCache implements SharedCache {
+
+    private static final long UNAVAILABLE_MILLIS = 10_000;
+    private static final int WRITE_QUEUE_SIZE = 1000;
+
+    private final JedisPool pool;
+    private final String keyPrefix;
+    private final ThreadPoolExecutor writer;
+    private volatile long unavailableUntil;
+
+    /**
+     * @param uri       the server, as redis://[:password@]host:port[/database]
+     * @param timeout   how long to wait for the server to connect or answer
+     * @param keyPrefix prefix of the keys in the server, to share it with others
+     */
+    public RedisSharedCache(URI uri, Duration timeout, String keyPrefix) {
+        GenericObjectPoolConfig<Jedis> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxWaitMillis(timeout.toMillis());
+        this.pool = new JedisPool(poolConfig, uri, (int) timeout.toMillis());
+        this.keyPrefix = keyPrefix;
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WRITE_QUEUE_SIZE), r -> {
+                    Thread thread = new Thread(r, "shared-cache-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        if (keys.isEmpty() || System.currentTimeMillis() < unavailableUntil) {
+            return Collections.emptyMap();
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        byte[][] redisKeys = new byte[keyList.size()][];
+        for (int i = 0; i < redisKeys.length; i++) {
+            redisKeys[i] = toRedisKey(keyList.get(i));
+        }
+        List<byte[]> found;
+        try (Jedis jedis = pool.getResource()) {
+            found = jedis.mget(redisKeys);
+        } catch (RuntimeException e) {
+            markUnavailable(e);
+            return Collections.emptyMap();
+        }
+        Map<String, byte[]> values = new HashMap<>();
+        for (int i = 0; i < found.size(); i++) {
+            if (found.get(i) != null) {
+                values.put(keyList.get(i), found.get(i));
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void put(String key, byte[] value, long expiresAt) {
+        if (System.currentTimeMillis() < unavailableUntil) {
+            return;
+        }
+        writer.execute(() -> {
+            long ttl = expiresAt - System.currentTimeMillis();
+            if (ttl <= 0) {
+                return;
+            }
+            try (Jedis jedis = pool.getResource()) {
+                jedis.psetex(toRedisKey(key), ttl, value);
+            } catch (RuntimeException e) {
+                markUnavailable(e);
+            }
+        });
+    }
+
+    private byte[] toRedisKey(String key) {
+        return (keyPrefix + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void markUnavailable(RuntimeException e) {
+        if (System.currentTimeMillis() >= unavailableUntil) {
+            log.warn("Shared cache could not be reached, not using it for {} ms: {}", UNAVAILABLE_MILLIS,
+                    e.getMessage());
+        }
+        unavailableUntil = System.currentTimeMillis() + UNAVAILABLE_MILLIS;
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.close();
+    }
+}
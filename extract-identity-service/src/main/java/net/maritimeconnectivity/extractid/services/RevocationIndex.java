@@ -0,0 +1,173 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-only set of revoked serial numbers stored in a memory-mapped file. Serial numbers are kept
+ * as sorted fixed-width unsigned big-endian entries, so a lookup is a binary search over the file
+ * and the serial numbers stay off the heap. A lookup only allocates the padded key it searches for.
+ */
+public final class RevocationIndex {
+
+    // RFC 5280 limits serial numbers to 20 octets
+    static final int ENTRY_LENGTH = 20;
+
+    private final Path file;
+    private final MappedByteBuffer entries;
+    private final int size;
+    // serial numbers that do not fit in an entry, which conforming CAs never issue
+    private final Set<BigInteger> oversized;
+
+    private RevocationIndex(Path file, MappedByteBuffer entries, Set<BigInteger> oversized) {
+        this.file = file;
+        this.entries = entries;
+        this.size = entries.capacity() / ENTRY_LENGTH;
+        this.oversized = oversized;
+    }
+
+    /**
+     * Writes the serial numbers to a new index file and maps it
+     * @param file    the file to create, any existing file is replaced
+     * @param serials the revoked serial numbers
+     * @return        the index
+     */
+    public static RevocationIndex create(Path file, Collection<BigInteger> serials) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(serials.size());
+        Set<BigInteger> oversized = new HashSet<>();
+        for (BigInteger serial : serials) {
+            byte[] entry = toEntry(serial);
+            if (entry == null) {
+                oversized.add(serial);
+            } else {
+                encoded.add(entry);
+            }
+        }
+        // entries have the same length, so unsigned byte order is numeric order
+        encoded.sort(RevocationIndex::compareEntries);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(encoded.size() * ENTRY_LENGTH);
+            byte[] previous = null;
+            for (byte[] entry : encoded) {
+                if (previous == null || compareEntries(previous, entry) != 0) {
+                    buffer.put(entry);
+                }
+                previous = entry;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file, oversized);
+    }
+
+    private static RevocationIndex open(Path file, Set<BigInteger> oversized) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new RevocationIndex(file, entries,
+                    oversized.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(oversized));
+        }
+    }
+
+    public boolean isRevoked(BigInteger serial) {
+        byte[] entry = toEntry(serial);
+        if (entry == null) {
+            return oversized.contains(serial);
+        }
+        ByteBuffer key = ByteBuffer.wrap(entry);
+        long high = key.getLong(0);
+        long middle = key.getLong(8);
+        int low = key.getInt(16);
+
+        int from = 0;
+        int to = size - 1;
+        while (from <= to) {
+            int mid = (from + to) >>> 1;
+            int offset = mid * ENTRY_LENGTH;
+            // absolute reads do not touch the buffer position, so lookups can run concurrently
+            int cmp = Long.compareUnsigned(entries.getLong(offset), high);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(entries.getLong(offset + 8), middle);
+            }
+            if (cmp == 0) {
+                cmp = Integer.compareUnsigned(entries.getInt(offset + 16), low);
+            }
+            if (cmp < 0) {
+                from = mid + 1;
+            } else if (cmp > 0) {
+                to = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size + oversized.size();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the serial number left padded to the entry length, or null if it does not fit
+     */
+    private static byte[] toEntry(BigInteger serial) {
+        if (serial.signum() < 0 || serial.bitLength() > ENTRY_LENGTH * 8) {
+            return null;
+        }
+        byte[] bytes = serial.toByteArray();
+        int start = bytes.length > ENTRY_LENGTH ? bytes.length - ENTRY_LENGTH : 0;
+        byte[] entry = new byte[ENTRY_LENGTH];
+        System.arraycopy(bytes, start, entry, ENTRY_LENGTH - (bytes.length - start), bytes.length - start);
+        return entry;
+    }
+
+    private static int compareEntries(byte[] a, byte[] b) {
+        for (int i = 0; i < ENTRY_LENGTH; i++) {
+            int cmp = Integer.compare(a[i] & 0xff, b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A second level cache behind the in-memory caches, which outlives the process or is shared by the
+ * replicas of the service. Implementations never throw: a cache that cannot be reached behaves as if
+ * it were empty, so the service keeps working without it.
+ */
+public interface SharedCache extends Closeable {
+
+    /**
+     * @param keys the keys to look up
+     * @return     the values that were found, by key
+     */
+    Map<String, byte[]> getAll(Collection<String> keys);
+
+    /**
+     * @return the value of a key, or null if it is not cached
+     */
+    default byte[] get(String key) {
+        return getAll(Collections.singletonList(key)).get(key);
+    }
+
+    /**
+     * Stores a value, which may happen after this returns
+     * @param expiresAt when the value stops being valid, in milliseconds since the epoch
+     */
+    void put(String key, byte[] value, long expiresAt);
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * @return a cache that holds nothing
+     */
+    static SharedCache none() {
+        return None.INSTANCE;
+    }
+
+    final class None implements SharedCache {
+
+        private static final None INSTANCE = new None();
+
+        private None() {
+        }
+
+        @Override
+        public Map<String, byte[]> getAll(Collection<String> keys) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void put(String key, byte[] value, long expiresAt) {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent callers that ask for the same key share one computation. The first caller runs
+ * the computation, and callers that arrive while it is running get its result instead of running
+ * it again. Once the computation has finished the next caller starts a new one, so results are not
+ * kept, which is left to the caches in front of this.
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    /**
+     * @param coalesced counts the callers that got the result of a computation started by another caller
+     */
+    public SingleFlight(Counter coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * Runs a computation on the calling thread, or waits for the one that is already running for the key
+     * @return the result of the computation, which may be null
+     */
+    public V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+        try {
+            V value = computation.get();
+            pending.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    /**
+     * Starts an asynchronous computation, or returns the one that is already running for the key
+     * @param computation starts the computation and returns a future of its result
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> computation) {
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+        pending.whenComplete((value, e) -> inFlight.remove(key, pending));
+        try {
+            computation.get().whenComplete((value, e) -> {
+                if (e != null) {
+                    pending.completeExceptionally(e);
+                } else {
+                    pending.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+        }
+        return pending;
+    }
+
+    /**
+     * @return the number of computations that are running
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // the waiting callers see the same exception as the caller that ran the computation
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
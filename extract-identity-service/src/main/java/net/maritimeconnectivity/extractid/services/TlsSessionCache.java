@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+/**
+ * Cache of the client certificates of mutual TLS connections by the TLS session they were presented in.
+ * A resumed session has the same client certificate, so its requests are answered without hashing or
+ * looking up the certificate again. A client can choose the session id it resumes, so an entry is only
+ * used if the client presented the same certificate. Entries expire after the configured TTL or when the
+ * certificate does, whichever comes first.
+ */
+public class TlsSessionCache {
+
+    // the request attributes in which the servlet container gives the client certificate chain and the session
+    public static final String CLIENT_CERTIFICATE_ATTRIBUTE = "javax.servlet.request.X509Certificate";
+    public static final String SESSION_ID_ATTRIBUTE = "javax.servlet.request.ssl_session_id";
+
+    private final Cache<String, ParsedCertificate> sessions;
+    private final CertificateCache certificateCache;
+
+    public TlsSessionCache(long maxSize, Duration ttl, CertificateCache certificateCache, ExtractionMetrics metrics) {
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new CertificateCache.CertificateExpiry(ttl.toNanos()))
+                .recordStats()
+                .build();
+        this.certificateCache = certificateCache;
+        metrics.monitor(sessions, "tlsSessions");
+    }
+
+    /**
+     * Looks up the client certificate of a TLS session, parsing and extracting it if the session is new
+     * @param sessionId  the id of the TLS session, or null if it is not known
+     * @param clientCert the certificate the client presented
+     * @return           the parsed certificate, or null if it could not be parsed
+     */
+    public ParsedCertificate get(String sessionId, X509Certificate clientCert) {
+        if (sessionId == null) {
+            return lookup(clientCert);
+        }
+        ParsedCertificate cached = sessions.getIfPresent(sessionId);
+        if (cached != null && cached.getCertificate().equals(clientCert)) {
+            return cached;
+        }
+        ParsedCertificate parsed = lookup(clientCert);
+        if (parsed != null) {
+            sessions.put(sessionId, parsed);
+        }
+        return parsed;
+    }
+
+    private ParsedCertificate lookup(X509Certificate clientCert) {
+        try {
+            return certificateCache.get(clientCert.getEncoded());
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    public long getSize() {
+        return sessions.estimatedSize();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import lombok.Getter;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of validating a certificate against the trust anchors
+ */
+@Getter
+public class ValidatedChain {
+
+    // the certificate, its issuers and the trust anchor, if a valid path was found
+    private final List<X509Certificate> chain;
+    // why no valid path was found
+    private final String error;
+
+    private ValidatedChain(List<X509Certificate> chain, String error) {
+        this.chain = chain;
+        this.error = error;
+    }
+
+    public static ValidatedChain valid(List<X509Certificate> chain) {
+        return new ValidatedChain(Collections.unmodifiableList(chain), null);
+    }
+
+    public static ValidatedChain invalid(X509Certificate cert, String error) {
+        return new ValidatedChain(Collections.singletonList(cert), error);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    public X509Certificate getTrustAnchor() {
+        return isValid() ? chain.get(chain.size() - 1) : null;
+    }
+}
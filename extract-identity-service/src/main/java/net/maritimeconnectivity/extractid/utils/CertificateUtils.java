@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.pki.CertificateHandler;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+@Slf4j
+public final class CertificateUtils {
+
+    public static final String PEM_START = "-----BEGIN CERTIFICATE-----";
+    public static final String PEM_END = "-----END CERTIFICATE-----";
+
+    private static final String PEM_BLOCK_START = "-----BEGIN ";
+    private static final String PEM_BLOCK_END = "-----END ";
+    private static final String PEM_DASHES = "-----";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private CertificateUtils() {
+    }
+
+    /**
+     * Decodes the Base64 body of a PEM encoded certificate
+     * @param pemCert the PEM certificate including its header and footer
+     * @return        the DER encoded certificate, or null if the input could not be decoded
+     */
+    public static byte[] pemToDer(String pemCert) {
+        int start = pemCert.indexOf(PEM_START);
+        if (start < 0) {
+            return null;
+        }
+        start += PEM_START.length();
+        int end = pemCert.indexOf(PEM_END, start);
+        if (end < 0) {
+            return null;
+        }
+        try {
+            return Base64.getMimeDecoder().decode(pemCert.substring(start, end));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Splits a string of concatenated PEM blocks into the individual blocks. Text outside of the
+     * blocks is ignored, and a block without a footer extends to the end of the input.
+     * @param pemBundle the concatenated PEM blocks
+     * @return          each block including its header and footer
+     */
+    public static List<String> splitPemBundle(String pemBundle) {
+        List<String> blocks = new ArrayList<>();
+        int start = pemBundle.indexOf(PEM_BLOCK_START);
+        while (start >= 0) {
+            int footer = pemBundle.indexOf(PEM_BLOCK_END, start + PEM_BLOCK_START.length());
+            if (footer < 0) {
+                blocks.add(pemBundle.substring(start).trim());
+                break;
+            }
+            int end = pemBundle.indexOf(PEM_DASHES, footer + PEM_BLOCK_END.length());
+            end = end < 0 ? pemBundle.length() : end + PEM_DASHES.length();
+            blocks.add(pemBundle.substring(start, end));
+            start = pemBundle.indexOf(PEM_BLOCK_START, end);
+        }
+        return blocks;
+    }
+
+    /**
+     * Parses a DER encoded X.509 certificate
+     * @param der the DER encoded certificate
+     * @return    the certificate, or null if it could not be parsed
+     */
+    public static X509Certificate getCertFromDer(byte[] der) {
+        try {
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(der));
+        } catch (CertificateException e) {
+            log.debug("Could not parse DER encoded certificate", e);
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the MCP identity of a certificate with {@link CertificateHandler#getIdentityFromCert}. The
+     * other name subject alternative names are given to it in the encoding it expects, whatever the
+     * Java version.
+     * @param cert the certificate
+     * @return     the identity
+     */
+    public static PKIIdentity getIdentity(X509Certificate cert) {
+        return CertificateHandler.getIdentityFromCert(LegacyOtherNameCertificate.of(cert));
+    }
+
+    /**
+     * Calculates the SHA-256 fingerprint of some DER encoded data
+     * @param der the DER encoded data
+     * @return    the fingerprint as a lower case hex string
+     */
+    public static String sha256Fingerprint(byte[] der) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(der));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+        }
+    }
+
+    /**
+     * @return the key identifier of the authority key identifier extension, or null if there is none
+     */
+    public static byte[] getAuthorityKeyId(X509Certificate cert) {
+        byte[] extension = cert.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        return AuthorityKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getKeyIdentifier();
+    }
+
+    /**
+     * @return the subject key identifier of the certificate, or null if it has none
+     */
+    public static byte[] getSubjectKeyId(X509Certificate cert) {
+        byte[] extension = cert.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        return SubjectKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getKeyIdentifier();
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
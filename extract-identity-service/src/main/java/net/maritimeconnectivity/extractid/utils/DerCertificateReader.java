@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import java.io.IOException;
+
+/**
+ * Reads the certificates of a binary certificate container one at a time
+ */
+public interface DerCertificateReader {
+
+    /**
+     * @return the DER encoding of the next certificate, or null if there are no more certificates
+     * @throws IOException if the container is malformed or could not be read
+     */
+    byte[] next() throws IOException;
+}
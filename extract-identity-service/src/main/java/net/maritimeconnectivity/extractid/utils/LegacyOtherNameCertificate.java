@@ -0,0 +1,279 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Principal;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A certificate that returns its other name subject alternative names in the encoding of Java 17
+ * and older. Those versions wrap the value of an other name in one explicit tag too many, and
+ * mcp-pki expects that extra tag. Java 21 returns the encoding of RFC 5280, on which mcp-pki fails
+ * with a ClassCastException. All other methods are passed on to the original certificate.
+ */
+final class LegacyOtherNameCertificate extends X509Certificate {
+
+    private final X509Certificate cert;
+    private final Collection<List<?>> subjectAlternativeNames;
+
+    private LegacyOtherNameCertificate(X509Certificate cert, Collection<List<?>> subjectAlternativeNames) {
+        this.cert = cert;
+        this.subjectAlternativeNames = subjectAlternativeNames;
+    }
+
+    /**
+     * @return the certificate itself if the JDK returns its other names in the legacy encoding or it
+     *         has none, or else a certificate that does
+     */
+    static X509Certificate of(X509Certificate cert) {
+        Collection<List<?>> altNames;
+        try {
+            altNames = cert.getSubjectAlternativeNames();
+        } catch (CertificateParsingException e) {
+            return cert;
+        }
+        if (altNames == null) {
+            return cert;
+        }
+        boolean converted = false;
+        List<List<?>> legacy = new ArrayList<>(altNames.size());
+        for (List<?> altName : altNames) {
+            byte[] legacyValue = (Integer) altName.get(0) == 0 && altName.get(1) instanceof byte[]
+                    ? toLegacyEncoding((byte[]) altName.get(1)) : null;
+            if (legacyValue != null) {
+                legacy.add(Collections.unmodifiableList(Arrays.asList(altName.get(0), legacyValue)));
+                converted = true;
+            } else {
+                legacy.add(altName);
+            }
+        }
+        return converted ? new LegacyOtherNameCertificate(cert, Collections.unmodifiableList(legacy)) : cert;
+    }
+
+    /**
+     * @return the other name with its value wrapped in a second explicit tag, or null if it already is
+     *         or cannot be read
+     */
+    private static byte[] toLegacyEncoding(byte[] otherName) {
+        try {
+            ASN1Sequence sequence = ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(otherName));
+            ASN1TaggedObject value = ASN1TaggedObject.getInstance(sequence.getObjectAt(1));
+            if (value.getObject() instanceof ASN1TaggedObject) {
+                return null;
+            }
+            ASN1EncodableVector legacy = new ASN1EncodableVector();
+            legacy.add(sequence.getObjectAt(0));
+            legacy.add(new DERTaggedObject(true, 0, new DERTaggedObject(true, 0, value.getObject())));
+            return new DERSequence(legacy).getEncoded();
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Collection<List<?>> getSubjectAlternativeNames() {
+        return subjectAlternativeNames;
+    }
+
+    @Override
+    public void checkValidity() throws CertificateExpiredException, CertificateNotYetValidException {
+        cert.checkValidity();
+    }
+
+    @Override
+    public void checkValidity(Date date) throws CertificateExpiredException, CertificateNotYetValidException {
+        cert.checkValidity(date);
+    }
+
+    @Override
+    public int getVersion() {
+        return cert.getVersion();
+    }
+
+    @Override
+    public BigInteger getSerialNumber() {
+        return cert.getSerialNumber();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Principal getIssuerDN() {
+        return cert.getIssuerDN();
+    }
+
+    @Override
+    public X500Principal getIssuerX500Principal() {
+        return cert.getIssuerX500Principal();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Principal getSubjectDN() {
+        return cert.getSubjectDN();
+    }
+
+    @Override
+    public X500Principal getSubjectX500Principal() {
+        return cert.getSubjectX500Principal();
+    }
+
+    @Override
+    public Date getNotBefore() {
+        return cert.getNotBefore();
+    }
+
+    @Override
+    public Date getNotAfter() {
+        return cert.getNotAfter();
+    }
+
+    @Override
+    public byte[] getTBSCertificate() throws CertificateEncodingException {
+        return cert.getTBSCertificate();
+    }
+
+    @Override
+    public byte[] getSignature() {
+        return cert.getSignature();
+    }
+
+    @Override
+    public String getSigAlgName() {
+        return cert.getSigAlgName();
+    }
+
+    @Override
+    public String getSigAlgOID() {
+        return cert.getSigAlgOID();
+    }
+
+    @Override
+    public byte[] getSigAlgParams() {
+        return cert.getSigAlgParams();
+    }
+
+    @Override
+    public boolean[] getIssuerUniqueID() {
+        return cert.getIssuerUniqueID();
+    }
+
+    @Override
+    public boolean[] getSubjectUniqueID() {
+        return cert.getSubjectUniqueID();
+    }
+
+    @Override
+    public boolean[] getKeyUsage() {
+        return cert.getKeyUsage();
+    }
+
+    @Override
+    public List<String> getExtendedKeyUsage() throws CertificateParsingException {
+        return cert.getExtendedKeyUsage();
+    }
+
+    @Override
+    public int getBasicConstraints() {
+        return cert.getBasicConstraints();
+    }
+
+    @Override
+    public Collection<List<?>> getIssuerAlternativeNames() throws CertificateParsingException {
+        return cert.getIssuerAlternativeNames();
+    }
+
+    @Override
+    public byte[] getEncoded() throws CertificateEncodingException {
+        return cert.getEncoded();
+    }
+
+    @Override
+    public void verify(PublicKey key) throws CertificateException, NoSuchAlgorithmException, InvalidKeyException,
+            NoSuchProviderException, SignatureException {
+        cert.verify(key);
+    }
+
+    @Override
+    public void verify(PublicKey key, String sigProvider) throws CertificateException, NoSuchAlgorithmException,
+            InvalidKeyException, NoSuchProviderException, SignatureException {
+        cert.verify(key, sigProvider);
+    }
+
+    @Override
+    public void verify(PublicKey key, Provider sigProvider) throws CertificateException, NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        cert.verify(key, sigProvider);
+    }
+
+    @Override
+    public PublicKey getPublicKey() {
+        return cert.getPublicKey();
+    }
+
+    @Override
+    public boolean hasUnsupportedCriticalExtension() {
+        return cert.hasUnsupportedCriticalExtension();
+    }
+
+    @Override
+    public Set<String> getCriticalExtensionOIDs() {
+        return cert.getCriticalExtensionOIDs();
+    }
+
+    @Override
+    public Set<String> getNonCriticalExtensionOIDs() {
+        return cert.getNonCriticalExtensionOIDs();
+    }
+
+    @Override
+    public byte[] getExtensionValue(String oid) {
+        return cert.getExtensionValue(oid);
+    }
+
+    @Override
+    public String toString() {
+        return cert.toString();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import net.maritimeconnectivity.pki.ocsp.OCSPValidationException;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.CertException;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Helpers for building OCSP requests and checking the responses to them without trusting the network
+ */
+public final class OCSPUtils {
+
+    // allowed difference between our clock and the clock of the responder
+    private static final long CLOCK_SKEW_MILLIS = 5 * 60 * 1000L;
+
+    private OCSPUtils() {
+    }
+
+    /**
+     * Creates the OCSP identifier of a certificate
+     * @param cert       the certificate
+     * @param issuerCert the certificate of the CA that issued it
+     * @return           the identifier that is used in OCSP requests and responses
+     */
+    public static CertificateID createCertificateId(X509Certificate cert, X509Certificate issuerCert)
+            throws OCSPValidationException {
+        try {
+            DigestCalculatorProvider digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+            return new CertificateID(digestCalculatorProvider.get(CertificateID.HASH_SHA1),
+                    new JcaX509CertificateHolder(issuerCert), cert.getSerialNumber());
+        } catch (OperatorCreationException | CertificateEncodingException | OCSPException e) {
+            throw new OCSPValidationException("Could not create OCSP certificate ID", e);
+        }
+    }
+
+    /**
+     * Parses an encoded OCSP response and checks that the responder answered successfully
+     * @param encoded the DER encoded OCSP response
+     * @return        the basic response contained in it
+     */
+    public static BasicOCSPResp parseResponse(byte[] encoded) throws OCSPValidationException {
+        try {
+            OCSPResp ocspResp = new OCSPResp(encoded);
+            if (ocspResp.getStatus() != OCSPResp.SUCCESSFUL) {
+                throw new OCSPValidationException("OCSP responder returned status " + ocspResp.getStatus());
+            }
+            Object responseObject = ocspResp.getResponseObject();
+            if (!(responseObject instanceof BasicOCSPResp)) {
+                throw new OCSPValidationException("OCSP response is not a basic OCSP response");
+            }
+            return (BasicOCSPResp) responseObject;
+        } catch (IOException | OCSPException e) {
+            throw new OCSPValidationException("Could not parse OCSP response", e);
+        }
+    }
+
+    /**
+     * Parses an encoded basic OCSP response, as kept by the response cache
+     * @param encoded the DER encoded basic OCSP response
+     * @return        the basic response
+     */
+    public static BasicOCSPResp parseBasicResponse(byte[] encoded) throws OCSPValidationException {
+        try {
+            return new BasicOCSPResp(BasicOCSPResponse.getInstance(ASN1Primitive.fromByteArray(encoded)));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new OCSPValidationException("Could not parse basic OCSP response", e);
+        }
+    }
+
+    /**
+     * Checks that an OCSP response has been signed by the issuer of the certificate in question,
+     * or by a responder that the issuer has delegated OCSP signing to
+     * @param basicResp  the OCSP response
+     * @param issuerCert the certificate of the CA that issued the certificate in question
+     */
+    public static void verifySignature(BasicOCSPResp basicResp, X509Certificate issuerCert)
+            throws OCSPValidationException {
+        try {
+            PublicKey signerKey = null;
+            if (isResponder(basicResp.getResponderId(), new JcaX509CertificateHolder(issuerCert))) {
+                signerKey = issuerCert.getPublicKey();
+            } else {
+                for (X509CertificateHolder holder : basicResp.getCerts()) {
+                    if (isResponder(basicResp.getResponderId(), holder)) {
+                        signerKey = getDelegatedResponderKey(holder, issuerCert);
+                        break;
+                    }
+                }
+            }
+            if (signerKey == null) {
+                throw new OCSPValidationException("OCSP response is not signed by an authorized responder");
+            }
+            if (!basicResp.isSignatureValid(new JcaContentVerifierProviderBuilder().build(signerKey))) {
+                throw new OCSPValidationException("OCSP response signature is not valid");
+            }
+        } catch (OperatorCreationException | CertificateEncodingException | OCSPException e) {
+            throw new OCSPValidationException("Could not verify OCSP response signature", e);
+        }
+    }
+
+    /**
+     * Finds the answer for a certificate in an OCSP response and checks that it is current
+     * @param basicResp the OCSP response
+     * @param certId    the identifier of the certificate
+     * @return          the single response for the certificate
+     */
+    public static SingleResp findResponse(BasicOCSPResp basicResp, CertificateID certId)
+            throws OCSPValidationException {
+        for (SingleResp singleResp : basicResp.getResponses()) {
+            if (singleResp.getCertID().equals(certId)) {
+                checkFreshness(singleResp);
+                return singleResp;
+            }
+        }
+        throw new OCSPValidationException("OCSP response does not contain the requested certificate");
+    }
+
+    public static CertStatus toCertStatus(SingleResp singleResp) {
+        CertificateStatus status = singleResp.getCertStatus();
+        if (status == CertificateStatus.GOOD) {
+            return CertStatus.GOOD;
+        } else if (status instanceof RevokedStatus) {
+            return CertStatus.REVOKED;
+        }
+        return CertStatus.UNKNOWN;
+    }
+
+    private static void checkFreshness(SingleResp singleResp) throws OCSPValidationException {
+        long now = System.currentTimeMillis();
+        if (singleResp.getThisUpdate().getTime() > now + CLOCK_SKEW_MILLIS) {
+            throw new OCSPValidationException("OCSP response is not yet valid");
+        }
+        Date nextUpdate = singleResp.getNextUpdate();
+        if (nextUpdate != null && nextUpdate.getTime() < now - CLOCK_SKEW_MILLIS) {
+            throw new OCSPValidationException("OCSP response has expired");
+        }
+    }
+
+    private static boolean isResponder(RespID respId, X509CertificateHolder holder) throws OCSPException {
+        try {
+            DigestCalculatorProvider digestCalculatorProvider = new JcaDigestCalculatorProviderBuilder().build();
+            return respId.equals(new RespID(holder.getSubject()))
+                    || respId.equals(new RespID(holder.getSubjectPublicKeyInfo(),
+                    digestCalculatorProvider.get(RespID.HASH_SHA1)));
+        } catch (OperatorCreationException e) {
+            throw new OCSPException("Could not create digest calculator", e);
+        }
+    }
+
+    private static PublicKey getDelegatedResponderKey(X509CertificateHolder holder, X509Certificate issuerCert)
+            throws OCSPValidationException {
+        try {
+            if (!holder.isSignatureValid(new JcaContentVerifierProviderBuilder().build(issuerCert.getPublicKey()))) {
+                throw new OCSPValidationException("OCSP responder certificate is not issued by the certificate issuer");
+            }
+            if (!holder.isValidOn(new Date())) {
+                throw new OCSPValidationException("OCSP responder certificate is not valid");
+            }
+            X509Certificate responderCert = CertificateUtils.getCertFromDer(holder.getEncoded());
+            List<String> extendedKeyUsage = responderCert == null ? null : responderCert.getExtendedKeyUsage();
+            if (extendedKeyUsage == null || !extendedKeyUsage.contains(KeyPurposeId.id_kp_OCSPSigning.getId())) {
+                throw new OCSPValidationException("OCSP responder certificate is not authorized for OCSP signing");
+            }
+            return responderCert.getPublicKey();
+        } catch (OperatorCreationException | CertException | IOException
+                | CertificateParsingException e) {
+            throw new OCSPValidationException("Could not verify OCSP responder certificate", e);
+        }
+    }
+}
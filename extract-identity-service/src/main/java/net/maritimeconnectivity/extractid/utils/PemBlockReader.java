@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the PEM blocks of a bundle one at a time, so that bundles of any size can be handled
+ * with a fixed amount of memory. Text outside of the blocks is ignored, like in
+ * {@link CertificateUtils#splitPemBundle(String)}.
+ */
+public class PemBlockReader {
+
+    private static final String BLOCK_START = "-----BEGIN ";
+    private static final String BLOCK_END = "-----END ";
+    private static final String DASHES = "-----";
+
+    private final Reader reader;
+    private final int maxBlockLength;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    /**
+     * @param reader         the PEM bundle
+     * @param maxBlockLength the number of characters after which a block is cut off. No certificate
+     *                       is this large, so a cut off block is reported as an invalid certificate.
+     */
+    public PemBlockReader(Reader reader, int maxBlockLength) {
+        this.reader = reader;
+        this.maxBlockLength = maxBlockLength;
+    }
+
+    /**
+     * @return the next block including its header and footer, or null at the end of the input
+     */
+    public String next() throws IOException {
+        String line;
+        do {
+            line = readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (!line.trim().startsWith(BLOCK_START));
+
+        String header = line.trim();
+        StringBuilder block = new StringBuilder(header);
+        // the header and footer may be on the same line if the line breaks were lost on the way
+        boolean complete = hasFooter(header);
+        while (!complete) {
+            line = readLine();
+            if (line == null) {
+                break;
+            }
+            String trimmed = line.trim();
+            if (block.length() < maxBlockLength) {
+                block.append('\n').append(trimmed);
+            }
+            complete = trimmed.startsWith(BLOCK_END);
+        }
+        return block.length() > maxBlockLength ? block.substring(0, maxBlockLength) : block.toString();
+    }
+
+    private static boolean hasFooter(String header) {
+        int footer = header.indexOf(BLOCK_END, BLOCK_START.length());
+        return footer >= 0 && header.indexOf(DASHES, footer + BLOCK_END.length()) >= 0;
+    }
+
+    /**
+     * Reads one line, keeping at most the maximum block length of it
+     * @return the line without its line break, or null at the end of the input
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return line.length() > 0 ? line.toString() : null;
+                }
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int keep = Math.min(position - start, Math.max(0, maxBlockLength - line.length()));
+            line.append(buffer, start, keep);
+            if (position < limit) {
+                position++;
+                return line.toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import org.bouncycastle.asn1.pkcs.ContentInfo;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.InputDecryptorProvider;
+import org.bouncycastle.operator.bc.BcDefaultDigestProvider;
+import org.bouncycastle.pkcs.PKCS12PfxPdu;
+import org.bouncycastle.pkcs.PKCS12SafeBag;
+import org.bouncycastle.pkcs.PKCS12SafeBagFactory;
+import org.bouncycastle.pkcs.PKCSException;
+import org.bouncycastle.pkcs.bc.BcPKCS12MacCalculatorBuilderProvider;
+import org.bouncycastle.pkcs.jcajce.JcePKCSPBEInputDecryptorProviderBuilder;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Provider;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads the certificates of a PKCS#12 file. Unlike PEM and PKCS#7 bundles a PKCS#12 file can not
+ * be read incrementally, since its integrity check covers the whole content and its certificates
+ * are usually encrypted together, so the file is read into memory first. Private keys in the file
+ * are ignored.
+ */
+public class Pkcs12CertificateReader implements DerCertificateReader {
+
+    // not registered globally, it is only used to decrypt the PKCS#12 contents
+    private static final Provider PROVIDER = new BouncyCastleProvider();
+
+    private final Deque<byte[]> certificates = new ArrayDeque<>();
+
+    /**
+     * @param in       the PKCS#12 file
+     * @param password the password of the file, an empty array if it has none
+     * @throws IOException if the file is malformed or the password is wrong
+     */
+    public Pkcs12CertificateReader(InputStream in, char[] password) throws IOException {
+        byte[] encoded = StreamUtils.copyToByteArray(in);
+        PKCS12PfxPdu pfx;
+        try {
+            pfx = new PKCS12PfxPdu(encoded);
+        } catch (IOException | RuntimeException e) {
+            throw new IOException("Input is not a PKCS#12 file", e);
+        }
+        try {
+            if (pfx.hasMac() && !pfx.isMacValid(new BcPKCS12MacCalculatorBuilderProvider(BcDefaultDigestProvider.INSTANCE), password)) {
+                throw new IOException("PKCS#12 password is wrong or the file is corrupted");
+            }
+            InputDecryptorProvider decryptor = new JcePKCSPBEInputDecryptorProviderBuilder()
+                    .setProvider(PROVIDER)
+                    .build(password);
+            for (ContentInfo info : pfx.getContentInfos()) {
+                PKCS12SafeBagFactory bags = PKCSObjectIdentifiers.encryptedData.equals(info.getContentType())
+                        ? new PKCS12SafeBagFactory(info, decryptor) : new PKCS12SafeBagFactory(info);
+                for (PKCS12SafeBag bag : bags.getSafeBags()) {
+                    if (bag.getBagValue() instanceof X509CertificateHolder) {
+                        certificates.add(((X509CertificateHolder) bag.getBagValue()).getEncoded());
+                    }
+                }
+            }
+        } catch (PKCSException | RuntimeException e) {
+            throw new IOException("PKCS#12 file could not be decrypted", e);
+        }
+    }
+
+    @Override
+    public byte[] next() {
+        return certificates.poll();
+    }
+}
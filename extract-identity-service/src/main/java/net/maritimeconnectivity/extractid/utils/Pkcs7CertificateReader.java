@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1SetParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1TaggedObjectParser;
+import org.bouncycastle.asn1.BERTags;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the certificates of a PKCS#7 (.p7b) certificate bundle as they arrive. Only the
+ * certificate currently being read is held in memory, whatever the size of the bundle.
+ */
+public class Pkcs7CertificateReader implements DerCertificateReader {
+
+    // tag of the certificates of a SignedData structure
+    private static final int CERTIFICATES_TAG = 0;
+
+    private final ASN1StreamParser parser;
+    private ASN1SetParser certificates;
+    private boolean finished;
+
+    public Pkcs7CertificateReader(InputStream in) {
+        // without a limit the parser rejects bundles that are larger than the heap
+        this.parser = new ASN1StreamParser(in, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public byte[] next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        try {
+            return readCertificate();
+        } catch (RuntimeException e) {
+            // the parsers report broken encodings of loaded elements as runtime exceptions
+            throw new IOException("Malformed PKCS#7 certificate bundle: " + e.getMessage(), e);
+        }
+    }
+
+    private byte[] readCertificate() throws IOException {
+        if (certificates == null) {
+            certificates = readToCertificates();
+            if (certificates == null) {
+                finished = true;
+                return null;
+            }
+        }
+        ASN1Encodable certificate = certificates.readObject();
+        if (certificate == null) {
+            finished = true;
+            return null;
+        }
+        return certificate.toASN1Primitive().getEncoded(ASN1Encoding.DER);
+    }
+
+    /**
+     * Reads ContentInfo { contentType, [0] EXPLICIT SignedData { version, digestAlgorithms,
+     * encapContentInfo, [0] IMPLICIT certificates, ... } } up to the certificates
+     * @return the certificates, or null if the bundle contains none
+     */
+    private ASN1SetParser readToCertificates() throws IOException {
+        ASN1SequenceParser contentInfo = expect(parser.readObject(), ASN1SequenceParser.class);
+        ASN1ObjectIdentifier contentType = expect(contentInfo.readObject(), ASN1ObjectIdentifier.class);
+        if (!PKCSObjectIdentifiers.signedData.equals(contentType)) {
+            throw new IOException("PKCS#7 content is " + contentType + " instead of signed data");
+        }
+        ASN1TaggedObjectParser content = expect(contentInfo.readObject(), ASN1TaggedObjectParser.class);
+        ASN1SequenceParser signedData = expect(content.getObjectParser(BERTags.SEQUENCE, true),
+                ASN1SequenceParser.class);
+        // version, digestAlgorithms and encapContentInfo are small, and have to be read to get past them
+        for (int i = 0; i < 3; i++) {
+            ASN1Encodable skipped = signedData.readObject();
+            if (skipped == null) {
+                throw new IOException("PKCS#7 signed data is truncated");
+            }
+            skipped.toASN1Primitive();
+        }
+        ASN1Encodable next = signedData.readObject();
+        if (!(next instanceof ASN1TaggedObjectParser)
+                || ((ASN1TaggedObjectParser) next).getTagNo() != CERTIFICATES_TAG) {
+            return null;
+        }
+        return expect(((ASN1TaggedObjectParser) next).getObjectParser(BERTags.SET, false), ASN1SetParser.class);
+    }
+
+    private static <T> T expect(ASN1Encodable element, Class<T> type) throws IOException {
+        if (!type.isInstance(element)) {
+            throw new IOException("Input is not a PKCS#7 certificate bundle");
+        }
+        return type.cast(element);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import com.fasterxml.jackson.dataformat.protobuf.schema.NativeProtobufSchema;
+import com.fasterxml.jackson.dataformat.protobuf.schema.ProtobufSchemaLoader;
+import net.maritimeconnectivity.extractid.model.BatchResult;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes the results of the service as Protobuf messages of the schema in proto/extractid.proto.
+ * A result is written as the message named after its class, and a batch of results as the message
+ * named after the class of the results followed by "Batch", whose items field holds the results.
+ * The results are written by Jackson, so they look the same as their JSON form.
+ */
+public class ProtobufSchemaHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public static final String PROTOBUF_VALUE = "application/x-protobuf";
+    private static final String SCHEMA_RESOURCE = "/proto/extractid.proto";
+    private static final String BATCH_SUFFIX = "Batch";
+
+    private final ProtobufMapper mapper = new ProtobufMapper();
+    private final NativeProtobufSchema schema;
+
+    public ProtobufSchemaHttpMessageConverter() {
+        super(MediaType.valueOf(PROTOBUF_VALUE));
+        try (InputStream in = getClass().getResourceAsStream(SCHEMA_RESOURCE)) {
+            schema = ProtobufSchemaLoader.std.loadNative(in, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load the Protobuf schema " + SCHEMA_RESOURCE, e);
+        }
+    }
+
+    /**
+     * @return the schema the results are written with
+     */
+    public NativeProtobufSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return schema.hasMessageType(clazz.getSimpleName());
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        String messageName = getMessageName(type != null ? type : clazz);
+        return messageName != null && schema.hasMessageType(messageName) && canWrite(mediaType);
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        if (object instanceof List) {
+            List<?> items = (List<?>) object;
+            // an empty message has no bytes, whatever its type
+            if (!items.isEmpty()) {
+                mapper.writer(schema.forType(getMessageName(type)))
+                        .writeValue(outputMessage.getBody(), Collections.singletonMap("items", items));
+            }
+        } else {
+            mapper.writer(schema.forType(object.getClass().getSimpleName())).writeValue(outputMessage.getBody(), object);
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("Protobuf request bodies are not supported", inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        return readInternal(Object.class, inputMessage);
+    }
+
+    /**
+     * @return the name of the message for a result type or a list of batch results, or null if the type
+     *         is a list whose results are not known, which is then left to the other converters
+     */
+    private static String getMessageName(Type type) {
+        if (type instanceof Class) {
+            return List.class.isAssignableFrom((Class<?>) type) ? null : ((Class<?>) type).getSimpleName();
+        }
+        if (type instanceof ParameterizedType && List.class.equals(((ParameterizedType) type).getRawType())) {
+            Type item = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (item instanceof ParameterizedType && BatchResult.class.equals(((ParameterizedType) item).getRawType())) {
+                Type result = ((ParameterizedType) item).getActualTypeArguments()[0];
+                if (result instanceof Class) {
+                    return ((Class<?>) result).getSimpleName() + BATCH_SUFFIX;
+                }
+            }
+        }
+        return null;
+    }
+}
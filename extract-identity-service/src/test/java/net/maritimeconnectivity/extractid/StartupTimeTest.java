@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Starts the service with the prod profile in a new JVM and measures the time until it accepts
+ * connections and until it has answered the first extraction request. The time to the first response
+ * may be at most half again the baseline, which can be set with -Dstartup.baseline-millis for the
+ * hardware the service runs on, or the limit itself with -Dstartup.max-millis.
+ */
+@Slf4j
+public class StartupTimeTest {
+
+    // measured on a single CPU with Java 8 and the test class path, which takes longer than the packaged war
+    private static final long BASELINE_MILLIS = Long.getLong("startup.baseline-millis", 12500);
+    private static final long MAX_TIME_TO_FIRST_RESPONSE_MILLIS = Long.getLong("startup.max-millis",
+            BASELINE_MILLIS * 3 / 2);
+
+    @Test
+    public void testTimeToFirstResponseWithProdProfile() throws Exception {
+        byte[] pemCert = Files.readAllBytes(Paths.get("src/test/resources/Certificate_My_vessel.pem"));
+        int port = findFreePort();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ExtractIdentityService.class.getName(), "--spring.profiles.active=prod", "--server.port=" + port)
+                .redirectErrorStream(true)
+                .redirectOutput(new File("target/startup-test.log"));
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(2 * MAX_TIME_TO_FIRST_RESPONSE_MILLIS);
+            while (!isListening(port)) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    fail("Service did not start, see target/startup-test.log");
+                }
+                Thread.sleep(10);
+            }
+            long listening = System.nanoTime();
+            assertEquals(200, post(port, "/api/extract/mcp", pemCert));
+            long firstResponse = System.nanoTime();
+            // the API documentation is not part of the prod profile
+            assertEquals(404, get(port, "/v2/api-docs"));
+
+            long startupMillis = TimeUnit.NANOSECONDS.toMillis(listening - start);
+            long firstRequestMillis = TimeUnit.NANOSECONDS.toMillis(firstResponse - listening);
+            long timeToFirstResponseMillis = TimeUnit.NANOSECONDS.toMillis(firstResponse - start);
+            log.info("Accepting connections after {} ms, first request took {} ms, first response after {} ms",
+                    startupMillis, firstRequestMillis, timeToFirstResponseMillis);
+            assertTrue("First response took " + timeToFirstResponseMillis + " ms (accepting connections after "
+                            + startupMillis + " ms), the limit is " + MAX_TIME_TO_FIRST_RESPONSE_MILLIS + " ms",
+                    timeToFirstResponseMillis < MAX_TIME_TO_FIRST_RESPONSE_MILLIS);
+        } finally {
+            process.destroy();
+            process.waitFor(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static boolean isListening(int port) {
+        try (Socket ignored = new Socket("localhost", port)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int post(int port, String path, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/x-pem-file");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return readStatus(connection);
+    }
+
+    private static int get(int port, String path) throws IOException {
+        return readStatus((HttpURLConnection) new URL("http://localhost:" + port + path).openConnection());
+    }
+
+    private static int readStatus(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            in.close();
+        }
+        connection.disconnect();
+        return status;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import net.maritimeconnectivity.extractid.support.StandInOCSPResponder;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends mixed extraction and OCSP traffic over many concurrent connections to a server with only a
+ * few worker threads, while the OCSP responder is slow. Extraction requests must not queue behind
+ * the OCSP checks, and the OCSP checks must all be answered within about one responder round trip.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=" + ConcurrentLoadTest.WORKER_THREADS,
+        "server.tomcat.threads.min-spare=" + ConcurrentLoadTest.WORKER_THREADS,
+        "server.tomcat.accept-count=1000",
+        "extractid.ocsp.max-in-flight-per-responder=1000",
+        "extractid.ocsp.max-connections=1000",
+        "extractid.ocsp.max-connections-per-responder=1000",
+        "extractid.limits.ocsp.initial-limit=1000"
+})
+public class ConcurrentLoadTest {
+
+    static final int WORKER_THREADS = 4;
+    private static final int CONNECTIONS = 200;
+    private static final long RESPONDER_LATENCY_MILLIS = 5000;
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Load Root CA")
+            .createSubCa("Load Sub CA");
+
+    @LocalServerPort
+    private int port;
+
+    private final Gson gson = new Gson();
+    private CloseableHttpAsyncClient client;
+    private StandInOCSPResponder responder;
+
+    @Before
+    public void setUp() throws IOException {
+        client = HttpAsyncClients.custom()
+                .setMaxConnTotal(2 * CONNECTIONS)
+                .setMaxConnPerRoute(2 * CONNECTIONS)
+                .build();
+        client.start();
+        responder = new StandInOCSPResponder(SUB_CA);
+        responder.setLatencyMillis(RESPONDER_LATENCY_MILLIS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        responder.close();
+    }
+
+    @Test
+    public void testMixedTrafficWithSlowResponder() throws Exception {
+        String issuerPem = TestCertificateAuthority.toPem(SUB_CA.getCertificate());
+        List<String> pemCerts = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            pemCerts.add(TestCertificateAuthority.toPem(SUB_CA.issueVesselCertificate(
+                    "urn:mrn:mcp:vessel:idp1:test:load" + i, "Load " + i, responder.getUrl())));
+        }
+        // parse every certificate once so the measurement is about waiting for the responder, not parsing
+        List<CompletableFuture<Answer>> warmUp = new ArrayList<>();
+        for (String pemCert : pemCerts) {
+            warmUp.add(send("/api/extract/mcp", pemCert, "application/x-pem-file"));
+        }
+        warmUp.add(send("/api/extract/mcp", issuerPem, "application/x-pem-file"));
+        for (CompletableFuture<Answer> answer : warmUp) {
+            answer.get(60, TimeUnit.SECONDS);
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Answer>> ocspAnswers = new ArrayList<>();
+        for (String pemCert : pemCerts) {
+            JsonObject integratedCerts = new JsonObject();
+            integratedCerts.addProperty("certificate", pemCert);
+            integratedCerts.addProperty("issuerCertificate", issuerPem);
+            ocspAnswers.add(send("/api/extract/ocsp", gson.toJson(integratedCerts), "application/json"));
+        }
+        List<CompletableFuture<Answer>> extractAnswers = new ArrayList<>();
+        for (String pemCert : pemCerts) {
+            extractAnswers.add(send("/api/extract/mcp", pemCert, "application/x-pem-file"));
+        }
+
+        long slowestExtraction = 0;
+        for (CompletableFuture<Answer> answer : extractAnswers) {
+            Answer extracted = answer.get(30, TimeUnit.SECONDS);
+            assertEquals(200, extracted.status);
+            slowestExtraction = Math.max(slowestExtraction, extracted.finishedAt - start);
+        }
+        for (CompletableFuture<Answer> answer : ocspAnswers) {
+            Answer checked = answer.get(30, TimeUnit.SECONDS);
+            assertEquals(200, checked.status);
+            assertEquals("GOOD", gson.fromJson(checked.body, JsonObject.class).get("certStatus").getAsString());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // holding a worker thread per OCSP check would need CONNECTIONS / WORKER_THREADS responder round trips
+        long blockingMillis = CONNECTIONS / WORKER_THREADS * RESPONDER_LATENCY_MILLIS;
+        assertTrue("Extraction waited for OCSP checks: " + TimeUnit.NANOSECONDS.toMillis(slowestExtraction) + " ms",
+                TimeUnit.NANOSECONDS.toMillis(slowestExtraction) < RESPONDER_LATENCY_MILLIS);
+        assertTrue("OCSP checks held worker threads: " + elapsedMillis + " ms", elapsedMillis < blockingMillis / 5);
+    }
+
+    private CompletableFuture<Answer> send(String path, String body, String contentType) {
+        HttpPost post = new HttpPost("http://localhost:" + port + path);
+        post.setEntity(new StringEntity(body, ContentType.create(contentType)));
+        CompletableFuture<Answer> future = new CompletableFuture<>();
+        client.execute(post, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    future.complete(new Answer(response.getStatusLine().getStatusCode(),
+                            EntityUtils.toString(response.getEntity()), System.nanoTime()));
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private static class Answer {
+        private final int status;
+        private final String body;
+        private final long finishedAt;
+
+        private Answer(int status, String body, long finishedAt) {
+            this.status = status;
+            this.body = body;
+            this.finishedAt = finishedAt;
+        }
+    }
+}
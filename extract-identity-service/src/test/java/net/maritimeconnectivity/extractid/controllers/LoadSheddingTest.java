@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.extractid.config.CRLConfig;
+import net.maritimeconnectivity.extractid.config.CacheConfig;
+import net.maritimeconnectivity.extractid.config.MetricsConfig;
+import net.maritimeconnectivity.extractid.config.OCSPConfig;
+import net.maritimeconnectivity.extractid.config.ValidationConfig;
+import net.maritimeconnectivity.extractid.config.WebConfig;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.support.StandInOCSPResponder;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(value = {ExtractIdentityController.class, ValidationController.class}, properties = {
+        "extractid.limits.ocsp.initial-limit=1",
+        "extractid.limits.ocsp.min-limit=1",
+        "extractid.limits.rate.requests-per-second=0.01",
+        "extractid.limits.rate.burst=3"
+})
+@Import({CertificateRequestSupport.class, CacheConfig.class, OCSPConfig.class, CRLConfig.class, WebConfig.class,
+        MetricsConfig.class, ValidationConfig.class, SimpleMeterRegistry.class})
+public class LoadSheddingTest {
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Limit Root CA")
+            .createSubCa("Limit Sub CA");
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Gson gson = new Gson();
+
+    private MockHttpServletRequestBuilder extract(X509Certificate client) {
+        String pemCert = TestCertificateAuthority.toPem(SUB_CA.getCertificate());
+        return post("/api/extract/mcp").content(pemCert).contentType("application/x-pem-file")
+                .with(request -> {
+                    request.setAttribute("javax.servlet.request.X509Certificate", new X509Certificate[]{client});
+                    return request;
+                });
+    }
+
+    @Test
+    public void testClientsAreRateLimitedByCertificate() throws Exception {
+        X509Certificate vessel = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:limited", "Limited", null);
+        X509Certificate sameVessel = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:limited", "Limited", null);
+        X509Certificate otherVessel = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:other", "Other", null);
+
+        assertEquals(200, mvc.perform(extract(vessel)).andReturn().getResponse().getStatus());
+        assertEquals(200, mvc.perform(extract(vessel)).andReturn().getResponse().getStatus());
+        // a certificate of the same MRN shares the bucket
+        assertEquals(200, mvc.perform(extract(sameVessel)).andReturn().getResponse().getStatus());
+        MockHttpServletResponse limited = mvc.perform(extract(sameVessel)).andReturn().getResponse();
+
+        assertEquals(429, limited.getStatus());
+        assertNotNull(limited.getHeader("Retry-After"));
+        assertEquals(429, gson.fromJson(limited.getContentAsString(), JsonObject.class).get("status").getAsInt());
+        assertEquals(200, mvc.perform(extract(otherVessel)).andReturn().getResponse().getStatus());
+        assertEquals(1, meterRegistry.get(ExtractionMetrics.REJECTION_COUNTER).tag("reason", "rate_limited")
+                .counter().count(), 0);
+    }
+
+    @Test
+    public void testOcspChecksAboveTheLimitAreShed() throws Exception {
+        try (StandInOCSPResponder responder = new StandInOCSPResponder(SUB_CA)) {
+            responder.setLatencyMillis(500);
+            X509Certificate client = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:ocsp-client",
+                    "OCSP Client", null);
+            JsonObject integratedCerts = new JsonObject();
+            integratedCerts.addProperty("certificate", TestCertificateAuthority.toPem(
+                    SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:shed", "Shed", responder.getUrl())));
+            integratedCerts.addProperty("issuerCertificate", TestCertificateAuthority.toPem(SUB_CA.getCertificate()));
+            MockHttpServletRequestBuilder check = post("/api/extract/ocsp").content(gson.toJson(integratedCerts))
+                    .contentType("application/json").with(request -> {
+                        request.setAttribute("javax.servlet.request.X509Certificate", new X509Certificate[]{client});
+                        return request;
+                    });
+
+            // the first check holds the only OCSP permit while it waits for the responder
+            MvcResult pending = mvc.perform(check).andReturn();
+            MockHttpServletResponse shed = mvc.perform(check).andReturn().getResponse();
+            assertEquals(503, shed.getStatus());
+            assertEquals("1", shed.getHeader("Retry-After"));
+
+            // extraction has its own budget
+            assertEquals(200, mvc.perform(extract(client)).andReturn().getResponse().getStatus());
+            assertEquals(200, mvc.perform(asyncDispatch(pending)).andReturn().getResponse().getStatus());
+            assertEquals(0, meterRegistry.get(ExtractionMetrics.CONCURRENCY_IN_FLIGHT_GAUGE).tag("endpoints", "ocsp")
+                    .gauge().value(), 0);
+        }
+    }
+}
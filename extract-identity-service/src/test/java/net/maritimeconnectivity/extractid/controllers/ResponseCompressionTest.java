@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that batch responses are compressed by the server for clients that accept gzip, while the
+ * small single results, which carry a strong ETag, are not
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class ResponseCompressionTest {
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Compression Root CA")
+            .createSubCa("Compression Sub CA");
+
+    @LocalServerPort
+    private int port;
+
+    private final Gson gson = new Gson();
+
+    @Test
+    public void testBatchResponseIsCompressed() throws IOException {
+        JsonArray body = new JsonArray();
+        for (int i = 0; i < 20; i++) {
+            body.add(TestCertificateAuthority.toPem(SUB_CA.issueVesselCertificate(
+                    "urn:mrn:mcp:vessel:idp1:test:compression" + i, "Compression " + i, null)));
+        }
+
+        HttpURLConnection connection = post("/api/extract/mcp/batch", gson.toJson(body), "application/json");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+        try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+            JsonArray items = gson.fromJson(StreamUtils.copyToString(in, StandardCharsets.UTF_8), JsonArray.class);
+            assertEquals(20, items.size());
+        }
+
+        connection = post("/api/extract/mcp", body.get(0).getAsString(), "application/x-pem-file");
+        assertEquals(200, connection.getResponseCode());
+        assertNull(connection.getHeaderField("Content-Encoding"));
+    }
+
+    private HttpURLConnection post(String path, String body, String contentType) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.controllers;
+
+import net.maritimeconnectivity.extractid.config.ExecutionConfig;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The same load as {@link ConcurrentLoadTest} with requests handled on virtual threads. Only runs on Java 21 or newer.
+ */
+@TestPropertySource(properties = "extractid.web.virtual-threads=true")
+public class VirtualThreadLoadTest extends ConcurrentLoadTest {
+
+    @BeforeClass
+    public static void requireVirtualThreads() {
+        ExecutorService executor = ExecutionConfig.createVirtualThreadExecutor();
+        Assume.assumeTrue("Virtual threads are not available", executor != null);
+        executor.shutdown();
+    }
+}
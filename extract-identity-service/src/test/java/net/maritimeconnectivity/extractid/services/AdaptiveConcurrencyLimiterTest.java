@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long THRESHOLD = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void testRequestsAboveTheLimitAreRejected() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, THRESHOLD);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        limiter.release(FAST, true, false);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void testLimitGrowsWhileFastAndInUse() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 6, THRESHOLD);
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < limiter.getLimit(); j++) {
+                assertTrue(limiter.tryAcquire());
+            }
+            while (limiter.getInFlight() > 0) {
+                limiter.release(FAST, true, false);
+            }
+        }
+        assertEquals(6, limiter.getLimit());
+
+        // a limit that is barely used does not grow
+        AdaptiveConcurrencyLimiter idle = new AdaptiveConcurrencyLimiter(4, 1, 100, THRESHOLD);
+        for (int i = 0; i < 10; i++) {
+            idle.tryAcquire();
+            idle.release(FAST, true, false);
+        }
+        assertEquals(4, idle.getLimit());
+    }
+
+    @Test
+    public void testLimitShrinksOnSlowOrDroppedRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 5, 100, THRESHOLD);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+            limiter.release(SLOW, true, false);
+        }
+        assertEquals(34, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(FAST, false, true);
+        assertEquals(31, limiter.getLimit());
+
+        // slow requests that are not samples, like streams, do not count
+        limiter.tryAcquire();
+        limiter.release(SLOW, false, false);
+        assertEquals(31, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(SLOW, true, false);
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+}
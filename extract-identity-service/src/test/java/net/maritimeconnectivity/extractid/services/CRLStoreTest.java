@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import net.maritimeconnectivity.extractid.config.CRLProperties;
+import net.maritimeconnectivity.extractid.model.CRLResult;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CRLStoreTest {
+
+    private static final TestCertificateAuthority ROOT_CA = TestCertificateAuthority.createRoot("Test Root CA");
+    private static final TestCertificateAuthority SUB_CA = ROOT_CA.createSubCa("Test Sub CA");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CRLProperties properties;
+    private File crlFile;
+    private CRLStore crlStore;
+
+    @Before
+    public void setUp() throws Exception {
+        File issuerFile = folder.newFile("sub-ca.pem");
+        Files.write(issuerFile.toPath(), TestCertificateAuthority.toPem(SUB_CA.getCertificate())
+                .getBytes(StandardCharsets.US_ASCII));
+        crlFile = folder.newFile("sub-ca.crl");
+
+        CRLProperties.Authority authority = new CRLProperties.Authority();
+        authority.setIssuerCertificate(issuerFile.getPath());
+        authority.setCrl(crlFile.toURI().toString());
+        properties = new CRLProperties();
+        properties.setDirectory(folder.newFolder("index").getPath());
+        properties.setAuthorities(Collections.singletonList(authority));
+    }
+
+    @After
+    public void tearDown() {
+        if (crlStore != null) {
+            crlStore.close();
+        }
+    }
+
+    private void writeCrl(X509CRL crl) throws Exception {
+        // replaced in one step so a background reload never sees a partly written file
+        File tmp = folder.newFile();
+        Files.write(tmp.toPath(), crl.getEncoded());
+        Files.move(tmp.toPath(), crlFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private CRLStore startStore() throws Exception {
+        crlStore = new CRLStore(properties);
+        crlStore.start();
+        return crlStore;
+    }
+
+    @Test
+    public void testRevokedAndGoodCertificates() throws Exception {
+        X509Certificate good = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:good", "Good", null);
+        X509Certificate revoked = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:bad", "Bad", null);
+        writeCrl(SUB_CA.createCrl(Collections.singletonList(revoked.getSerialNumber()), new Date(),
+                TestCertificateAuthority.daysFromNow(1)));
+        startStore();
+
+        assertEquals("GOOD", crlStore.checkStatus(good).getCertStatus());
+        CRLResult result = crlStore.checkStatus(revoked);
+        assertEquals("REVOKED", result.getCertStatus());
+        assertEquals(SUB_CA.getCertificate().getSubjectX500Principal().getName(), result.getCrlIssuer());
+    }
+
+    @Test
+    public void testUnknownIssuer() throws Exception {
+        writeCrl(SUB_CA.createCrl(Collections.emptyList(), new Date(), TestCertificateAuthority.daysFromNow(1)));
+        startStore();
+        TestCertificateAuthority otherCa = ROOT_CA.createSubCa("Other Sub CA");
+
+        assertNull(crlStore.checkStatus(otherCa.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:other", "Other", null)));
+    }
+
+    @Test
+    public void testCrlWithInvalidSignatureIsRejected() throws Exception {
+        TestCertificateAuthority impostor = TestCertificateAuthority.createRoot("Test Sub CA");
+        writeCrl(impostor.createCrl(Collections.emptyList(), new Date(), TestCertificateAuthority.daysFromNow(1)));
+        startStore();
+
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:impostor", "Impostor", null);
+        assertEquals("UNKNOWN", crlStore.checkStatus(cert).getCertStatus());
+    }
+
+    @Test
+    public void testIndirectCrlIsRejected() throws Exception {
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:indirect", "Indirect", null);
+        IssuingDistributionPoint distributionPoint = new IssuingDistributionPoint(null, false, false, null, true, false);
+        writeCrl(SUB_CA.createCrl(Collections.singletonList(cert.getSerialNumber()), new Date(),
+                TestCertificateAuthority.daysFromNow(1),
+                new Extension(Extension.issuingDistributionPoint, true, distributionPoint.getEncoded())));
+        startStore();
+
+        assertEquals("UNKNOWN", crlStore.checkStatus(cert).getCertStatus());
+    }
+
+    @Test
+    public void testCrlIsReloadedAtNextUpdate() throws Exception {
+        properties.setMinRefreshInterval(Duration.ofMillis(50));
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:later", "Later", null);
+        Date thisUpdate = new Date();
+        writeCrl(SUB_CA.createCrl(Collections.emptyList(), thisUpdate, new Date(thisUpdate.getTime() + 300)));
+        startStore();
+        assertEquals("GOOD", crlStore.checkStatus(cert).getCertStatus());
+
+        List<BigInteger> revoked = Collections.singletonList(cert.getSerialNumber());
+        writeCrl(SUB_CA.createCrl(revoked, new Date(thisUpdate.getTime() + 1000), TestCertificateAuthority.daysFromNow(1)));
+        Thread.sleep(1500);
+
+        assertEquals("REVOKED", crlStore.checkStatus(cert).getCertStatus());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CertificateCacheTest {
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Test Root CA")
+            .createSubCa("Test Sub CA");
+    private static final String MRN = "urn:mrn:mcp:vessel:idp1:test:lazy";
+
+    @Test
+    public void testIdentityIsExtractedOnlyWhenAskedFor() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        CertificateCache cache = new CertificateCache(100, Duration.ofHours(1), new ExtractionMetrics(registry));
+        X509Certificate cert = SUB_CA.issueVesselCertificate(MRN, "Lazy", "http://localhost/ocsp");
+
+        ParsedCertificate parsed = cache.get(cert.getEncoded());
+
+        assertEquals(cert, parsed.getCertificate());
+        assertEquals(0, extractions(registry));
+
+        assertEquals(MRN, parsed.getIdentity().getMrn());
+        assertSame(parsed.getIdentity(), cache.get(cert.getEncoded()).getIdentity());
+        assertEquals(1, extractions(registry));
+    }
+
+    @Test
+    public void testCertificateIsAvailableWhenIdentityExtractionFails() throws Exception {
+        X509Certificate cert = SUB_CA.issueVesselCertificate(MRN, "Failing", "http://localhost/ocsp");
+        ParsedCertificate parsed = new ParsedCertificate("fingerprint", cert, () -> {
+            throw new IllegalStateException("cannot extract");
+        });
+
+        assertEquals(cert, parsed.getCertificate());
+        assertNotNull(parsed.getAttributes());
+        try {
+            parsed.getIdentity();
+            fail("The extraction failure should reach the caller");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private static long extractions(MeterRegistry registry) {
+        return registry.get(ExtractionMetrics.STAGE_TIMER).tag("stage", "identity_extraction").timer().count();
+    }
+}
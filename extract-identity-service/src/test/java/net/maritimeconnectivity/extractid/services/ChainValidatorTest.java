@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.x509.CertificatePolicies;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChainValidatorTest {
+
+    private static final TestCertificateAuthority ROOT_CA = TestCertificateAuthority.createRoot("Test Root CA");
+    private static final TestCertificateAuthority SUB_CA = ROOT_CA.createSubCa("Test Sub CA");
+    // has the same name as the trusted root, but a different key
+    private static final TestCertificateAuthority IMPOSTOR_ROOT_CA = TestCertificateAuthority.createRoot("Test Root CA");
+
+    private static ChainValidator createValidator() {
+        return new ChainValidator(Collections.singletonList(ROOT_CA.getCertificate()), Collections.emptyList(),
+                1000, 8, 16, 1000, ExtractionMetrics.noop());
+    }
+
+    @Test
+    public void testChainWithSentIntermediateIsValid() {
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:valid", "Valid Vessel", null);
+
+        ValidatedChain chain = createValidator().validate(cert,
+                Collections.singletonList(SUB_CA.getCertificate()), new Date());
+
+        assertTrue(chain.isValid());
+        assertNull(chain.getError());
+        assertEquals(Arrays.asList(cert, SUB_CA.getCertificate(), ROOT_CA.getCertificate()), chain.getChain());
+        assertEquals(ROOT_CA.getCertificate(), chain.getTrustAnchor());
+    }
+
+    @Test
+    public void testConfiguredIntermediateIsUsed() {
+        ChainValidator validator = new ChainValidator(Collections.singletonList(ROOT_CA.getCertificate()),
+                Collections.singletonList(SUB_CA.getCertificate()), 1000, 8, 16, 1000, ExtractionMetrics.noop());
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:configured", "Configured Vessel", null);
+
+        assertTrue(validator.validate(cert, Collections.emptyList(), new Date()).isValid());
+    }
+
+    @Test
+    public void testMissingIntermediateIsInvalid() {
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:orphan", "Orphan Vessel", null);
+
+        ValidatedChain chain = createValidator().validate(cert, Collections.emptyList(), new Date());
+
+        assertFalse(chain.isValid());
+        assertTrue(chain.getError().startsWith("No certificate of the issuer"));
+        assertEquals(Collections.singletonList(cert), chain.getChain());
+    }
+
+    @Test
+    public void testExpiredCertificateIsInvalid() {
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:expired", "Expired Vessel",
+                null, TestCertificateAuthority.daysFromNow(1));
+
+        ValidatedChain chain = createValidator().validate(cert,
+                Collections.singletonList(SUB_CA.getCertificate()), TestCertificateAuthority.daysFromNow(2));
+
+        assertFalse(chain.isValid());
+        assertEquals("Certificate is not valid at the time of validation", chain.getError());
+    }
+
+    @Test
+    public void testRootWithTrustedNameButOtherKeyIsInvalid() {
+        TestCertificateAuthority impostorSubCa = IMPOSTOR_ROOT_CA.createSubCa("Impostor Sub CA");
+        X509Certificate cert = impostorSubCa.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:impostor", "Impostor Vessel", null);
+
+        ValidatedChain chain = createValidator().validate(cert,
+                Collections.singletonList(impostorSubCa.getCertificate()), new Date());
+
+        assertFalse(chain.isValid());
+    }
+
+    @Test
+    public void testUnhandledCriticalExtensionIsInvalid() throws Exception {
+        Extension policies = new Extension(Extension.certificatePolicies, true, new DEROctetString(
+                new CertificatePolicies(new PolicyInformation(new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.1")))));
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:policy", "Policy Vessel",
+                null, TestCertificateAuthority.daysFromNow(365), policies);
+
+        ValidatedChain chain = createValidator().validate(cert,
+                Collections.singletonList(SUB_CA.getCertificate()), new Date());
+
+        assertFalse(chain.isValid());
+        assertEquals("Certificate has the unsupported critical extension " + Extension.certificatePolicies.getId(),
+                chain.getError());
+    }
+
+    @Test(timeout = 30000)
+    public void testSearchThroughMeshOfIntermediatesGivesUp() {
+        // every one of these certificates can issue all the others, so there are about 50^8 paths to try
+        TestCertificateAuthority meshCa = TestCertificateAuthority.createRoot("Mesh CA");
+        List<X509Certificate> mesh = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            mesh.add(meshCa.recertify());
+        }
+        X509Certificate cert = meshCa.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:mesh", "Mesh Vessel", null);
+        ChainValidator validator = new ChainValidator(Collections.singletonList(ROOT_CA.getCertificate()),
+                Collections.emptyList(), 1000, 8, 100, 1000, ExtractionMetrics.noop());
+
+        ValidatedChain chain = validator.validate(cert, mesh, new Date());
+
+        assertFalse(chain.isValid());
+        assertEquals("No path to a trust anchor was found within 1000 issuer checks", chain.getError());
+    }
+
+    @Test
+    public void testTooManyIntermediatesAreRejected() {
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:many", "Many Vessel", null);
+
+        ValidatedChain chain = createValidator().validate(cert,
+                Collections.nCopies(17, SUB_CA.getCertificate()), new Date());
+
+        assertFalse(chain.isValid());
+        assertEquals("At most 16 intermediate certificates can be sent", chain.getError());
+    }
+
+    @Test
+    public void testVerifiedSignaturesAreCached() {
+        ChainValidator validator = createValidator();
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:cached", "Cached Vessel", null);
+
+        assertTrue(validator.validate(cert, Collections.singletonList(SUB_CA.getCertificate()), new Date()).isValid());
+        assertEquals(0, validator.getSignatureCacheStats().hitCount());
+        assertTrue(validator.validate(cert, Collections.singletonList(SUB_CA.getCertificate()), new Date()).isValid());
+        assertEquals(2, validator.getSignatureCacheStats().hitCount());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClientRateLimiterTest {
+
+    @Test
+    public void testBurstThenSteadyRate() throws Exception {
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(20, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("a"));
+        }
+        long wait = rateLimiter.tryAcquire("a");
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, rateLimiter.tryAcquire("b"));
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 10);
+        assertEquals(0, rateLimiter.tryAcquire("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateMustBePositive() {
+        new ClientRateLimiter(0, 10);
+    }
+}
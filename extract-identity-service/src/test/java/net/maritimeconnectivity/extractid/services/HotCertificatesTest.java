@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HotCertificatesTest {
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Test Root CA")
+            .createSubCa("Test Sub CA");
+
+    private static OCSPCheck check(String name) {
+        return new OCSPCheck(SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:" + name, name, null),
+                SUB_CA.getCertificate());
+    }
+
+    @Test
+    public void testSketchEstimatesFrequencies() {
+        CountMinSketch sketch = new CountMinSketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("hot");
+            sketch.increment("item-" + i);
+        }
+        assertEquals(100, sketch.estimate("hot"));
+        assertTrue(sketch.estimate("item-1") < 5);
+        assertEquals(0, sketch.estimate("never seen"));
+    }
+
+    @Test
+    public void testSketchForgetsOldFrequencies() {
+        CountMinSketch sketch = new CountMinSketch(16);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("old");
+        }
+        // ten increments per counter of a row halve all the counters
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment("item-" + i);
+        }
+        assertTrue(sketch.estimate("old") < 100);
+    }
+
+    @Test
+    public void testMostOftenCheckedCertificatesAreKept() {
+        HotCertificates hotCertificates = new HotCertificates(2);
+        OCSPCheck pinned = check("pinned");
+        hotCertificates.pin("pinned", pinned);
+        for (int i = 0; i < 10; i++) {
+            hotCertificates.record("a", check("a"));
+            if (i < 5) {
+                hotCertificates.record("b", check("b"));
+            }
+            if (i < 3) {
+                hotCertificates.record("c", check("c"));
+            }
+        }
+        // checked only once
+        hotCertificates.record("d", check("d"));
+
+        Map<String, OCSPCheck> hottest = hotCertificates.getHottest();
+
+        assertEquals(3, hottest.size());
+        assertTrue(hottest.keySet().containsAll(Arrays.asList("pinned", "a", "b")));
+        assertEquals(pinned, hottest.get("pinned"));
+        assertFalse(hottest.containsKey("c"));
+        assertEquals(3, hotCertificates.size());
+    }
+
+    @Test
+    public void testStapledResponsesAreNotKept() {
+        HotCertificates hotCertificates = new HotCertificates(10);
+        OCSPCheck check = check("stapled");
+        OCSPCheck stapled = new OCSPCheck(check.getCertificate(), check.getIssuerCertificate(), new byte[100]);
+        hotCertificates.record("stapled", stapled);
+        hotCertificates.record("stapled", stapled);
+
+        OCSPCheck kept = hotCertificates.getHottest().get("stapled");
+
+        assertEquals(check.getCertificate(), kept.getCertificate());
+        assertNull(kept.getStapledResponse());
+    }
+}
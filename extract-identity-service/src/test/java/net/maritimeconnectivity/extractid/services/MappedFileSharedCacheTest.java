@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedFileSharedCacheTest {
+
+    private static final long HOUR = 3600_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEntriesSurviveReopening() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.dat");
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            cache.put("a", bytes("first"), expiresAt);
+            cache.put("b", bytes("second"), expiresAt);
+            cache.put("a", bytes("replaced"), expiresAt);
+        }
+
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            Map<String, byte[]> values = cache.getAll(Arrays.asList("a", "b", "c"));
+
+            assertEquals(2, values.size());
+            assertArrayEquals(bytes("replaced"), values.get("a"));
+            assertArrayEquals(bytes("second"), values.get("b"));
+        }
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotReturned() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("cache.dat");
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            cache.put("short", bytes("value"), System.currentTimeMillis() + 50);
+            cache.put("long", bytes("value"), System.currentTimeMillis() + HOUR);
+            Thread.sleep(100);
+
+            assertNull(cache.get("short"));
+            assertArrayEquals(bytes("value"), cache.get("long"));
+        }
+    }
+
+    @Test
+    public void testFullFileIsCompacted() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.dat");
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        long generation;
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 1024)) {
+            // rewriting the same keys fills the file with replaced records many times over
+            for (int i = 0; i < 200; i++) {
+                cache.put("key" + (i % 5), bytes("value" + i), expiresAt);
+            }
+
+            assertEquals(5, cache.size());
+            for (int i = 195; i < 200; i++) {
+                assertArrayEquals(bytes("value" + i), cache.get("key" + (i % 5)));
+            }
+            assertTrue(cache.getGeneration() > 1);
+            assertInUse(file);
+            generation = cache.getGeneration();
+        }
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 1024)) {
+            assertArrayEquals(bytes("value199"), cache.get("key4"));
+            assertEquals(generation, cache.getGeneration());
+        }
+    }
+
+    @Test
+    public void testFileIsEmptiedWhenItCannotBeCompacted() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.dat");
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        // the compacted file cannot be written where a directory is in the way
+        Files.createDirectories(folder.getRoot().toPath().resolve("cache.dat.compact").resolve("blocked"));
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 1024)) {
+            for (int i = 0; i < 50; i++) {
+                cache.put("key" + i, bytes("value" + i), expiresAt);
+            }
+
+            assertArrayEquals(bytes("value49"), cache.get("key49"));
+            assertInUse(file);
+        }
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 1024)) {
+            assertArrayEquals(bytes("value49"), cache.get("key49"));
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.dat");
+        long expiresAt = System.currentTimeMillis() + HOUR;
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            cache.put("whole", bytes("written"), expiresAt);
+            cache.put("torn", bytes("cut off"), expiresAt);
+        }
+        // damage the value of the last record as if the process stopped while writing it
+        byte[] content = Files.readAllBytes(file);
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        content[text.indexOf("cut off")] = 'X';
+        Files.write(file, content);
+
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            assertArrayEquals(bytes("written"), cache.get("whole"));
+            assertNull(cache.get("torn"));
+
+            // new records are written over the damaged one
+            cache.put("after", bytes("restart"), expiresAt);
+        }
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(bytes("restart"), cache.get("after"));
+        }
+    }
+
+    @Test
+    public void testFileIsUsedByOneProcessAtATime() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("cache.dat");
+        try (MappedFileSharedCache cache = new MappedFileSharedCache(file, 4096)) {
+            assertInUse(file);
+        }
+    }
+
+    private static void assertInUse(Path file) {
+        try {
+            new MappedFileSharedCache(file, 4096);
+            fail("A file that is in use should not be opened again");
+        } catch (IOException | RuntimeException e) {
+            // expected
+        }
+    }
+}
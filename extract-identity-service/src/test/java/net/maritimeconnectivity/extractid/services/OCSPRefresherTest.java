@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import net.maritimeconnectivity.extractid.config.OCSPConfig;
+import net.maritimeconnectivity.extractid.config.OCSPProperties;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.model.OCSPResult;
+import net.maritimeconnectivity.extractid.support.StandInOCSPResponder;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OCSPRefresherTest {
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Test Root CA")
+            .createSubCa("Test Sub CA");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OCSPProperties properties;
+    private CloseableHttpAsyncClient httpClient;
+    private StandInOCSPResponder responder;
+    private OCSPResponseCache responseCache;
+    private CertificateCache certificateCache;
+    private HotCertificates hotCertificates;
+    private OCSPService ocspService;
+    private OCSPRefresher refresher;
+
+    @Before
+    public void setUp() throws IOException {
+        properties = new OCSPProperties();
+        properties.setReadTimeout(Duration.ofSeconds(2));
+        // the scheduled renewals are left out, the tests call refresh themselves
+        properties.getRefresh().setEnabled(false);
+        properties.getRefresh().setInterval(Duration.ZERO);
+        httpClient = new OCSPConfig().ocspHttpClient(properties);
+        responder = new StandInOCSPResponder(SUB_CA);
+        responseCache = new OCSPResponseCache(1000, properties.getCache().getMaxAge());
+        certificateCache = new CertificateCache(1000, Duration.ofHours(1));
+        hotCertificates = new HotCertificates(10);
+        ocspService = new OCSPService(httpClient, responseCache, properties, ExtractionMetrics.noop(), hotCertificates);
+        refresher = new OCSPRefresher(ocspService, responseCache, certificateCache, hotCertificates, properties,
+                ExtractionMetrics.noop());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        refresher.close();
+        responder.close();
+        httpClient.close();
+    }
+
+    @Test
+    public void testResponsesOfHotCertificatesAreRenewedBeforeTheyExpire() throws Exception {
+        // every response expires within the time before expiry at which it is renewed
+        responder.setValidityMillis(TimeUnit.MINUTES.toMillis(1));
+        X509Certificate hot = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:hot", "Hot", responder.getUrl());
+        X509Certificate cold = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:cold", "Cold", responder.getUrl());
+        for (int i = 0; i < 3; i++) {
+            ocspService.checkStatus(hot, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        }
+        ocspService.checkStatus(cold, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        assertEquals(2, responder.getRequestCount().get());
+
+        refresher.refresh().get(5, TimeUnit.SECONDS);
+
+        // only the certificate that was checked more than once is renewed
+        assertEquals(3, responder.getRequestCount().get());
+        OCSPResult result = ocspService.checkStatus(hot, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        assertTrue(result.isCached());
+        assertEquals(3, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testResponsesThatDoNotExpireSoonAreKept() throws Exception {
+        X509Certificate hot = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:fresh", "Fresh", responder.getUrl());
+        for (int i = 0; i < 3; i++) {
+            ocspService.checkStatus(hot, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        }
+
+        refresher.refresh().get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testCertificatesArePrewarmedAtStartup() throws Exception {
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:prewarmed", "Prewarmed",
+                responder.getUrl());
+        File file = folder.newFile("prewarmed.pem");
+        String chain = TestCertificateAuthority.toPem(cert) + "\n" + TestCertificateAuthority.toPem(SUB_CA.getCertificate());
+        Files.write(file.toPath(), chain.getBytes(StandardCharsets.US_ASCII));
+        properties.getPrewarm().setCertificates(Collections.singletonList(file.getPath()));
+
+        refresher.start();
+
+        assertEquals(1, responder.getRequestCount().get());
+        assertEquals(2, certificateCache.getSize());
+        OCSPResult result = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        assertTrue(result.isCached());
+        assertEquals(1, responder.getRequestCount().get());
+        // pre-warmed certificates are renewed however rarely they are checked
+        assertEquals(1, hotCertificates.getHottest().size());
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.maritimeconnectivity.extractid.config.OCSPConfig;
+import net.maritimeconnectivity.extractid.config.OCSPProperties;
+import net.maritimeconnectivity.extractid.exceptions.OCSPResponderBusyException;
+import net.maritimeconnectivity.extractid.metrics.ExtractionMetrics;
+import net.maritimeconnectivity.extractid.model.OCSPResult;
+import net.maritimeconnectivity.extractid.support.StandInOCSPResponder;
+import net.maritimeconnectivity.extractid.support.StandInRedisServer;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import net.maritimeconnectivity.extractid.utils.OCSPUtils;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OCSPServiceTest {
+
+    private static final TestCertificateAuthority ROOT_CA = TestCertificateAuthority.createRoot("Test Root CA");
+    private static final TestCertificateAuthority SUB_CA = ROOT_CA.createSubCa("Test Sub CA");
+
+    private OCSPProperties properties;
+    private CloseableHttpAsyncClient httpClient;
+    private StandInOCSPResponder responder;
+
+    @Before
+    public void setUp() throws IOException {
+        properties = new OCSPProperties();
+        properties.setReadTimeout(Duration.ofSeconds(2));
+        httpClient = new OCSPConfig().ocspHttpClient(properties);
+        responder = new StandInOCSPResponder(SUB_CA);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        responder.close();
+        httpClient.close();
+    }
+
+    private OCSPService createService() {
+        OCSPResponseCache responseCache = new OCSPResponseCache(properties.getCache().getMaxSize(),
+                properties.getCache().getMaxAge());
+        return new OCSPService(httpClient, responseCache, properties);
+    }
+
+    @Test
+    public void testGoodAndRevokedCertificates() throws Exception {
+        OCSPService ocspService = createService();
+        X509Certificate good = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:good", "Good", responder.getUrl());
+        X509Certificate revoked = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:bad", "Bad", responder.getUrl());
+        responder.revoke(revoked.getSerialNumber());
+
+        OCSPResult goodResult = ocspService.checkStatus(good, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        OCSPResult revokedResult = ocspService.checkStatus(revoked, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertEquals("GOOD", goodResult.getCertStatus());
+        assertEquals(responder.getUrl(), goodResult.getOcspResponderUri());
+        assertEquals("REVOKED", revokedResult.getCertStatus());
+    }
+
+    @Test
+    public void testDelegatedResponder() throws Exception {
+        try (StandInOCSPResponder delegated = new StandInOCSPResponder(SUB_CA, SUB_CA.createOcspResponder("Test OCSP"))) {
+            OCSPService ocspService = createService();
+            X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:delegated", "Delegated",
+                    delegated.getUrl());
+
+            OCSPResult result = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+            assertEquals("GOOD", result.getCertStatus());
+        }
+    }
+
+    @Test
+    public void testResponseFromWrongIssuerIsNotTrusted() throws Exception {
+        OCSPService ocspService = createService();
+        TestCertificateAuthority otherCa = ROOT_CA.createSubCa("Other Sub CA");
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:wrong", "Wrong", responder.getUrl());
+
+        OCSPResult result = ocspService.checkStatus(cert, otherCa.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertEquals("UNKNOWN", result.getCertStatus());
+        assertEquals(0, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testStapledResponseOfForgedIssuerIsNotTrusted() throws Exception {
+        OCSPService ocspService = createService();
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:forged-issuer",
+                "Forged issuer", responder.getUrl());
+        responder.revoke(cert.getSerialNumber());
+        // has the name of the real issuer but its own key, and vouches for the certificate
+        TestCertificateAuthority forgedIssuer = TestCertificateAuthority.createRoot("Test Sub CA");
+        byte[] stapled;
+        try (StandInOCSPResponder forger = new StandInOCSPResponder(forgedIssuer)) {
+            stapled = forger.staple(cert, new Date());
+        }
+
+        OCSPResult result = ocspService.checkStatuses(Collections.singletonList(
+                new OCSPCheck(cert, forgedIssuer.getCertificate(), stapled))).get(0).get(5, TimeUnit.SECONDS);
+
+        assertEquals("UNKNOWN", result.getCertStatus());
+        assertFalse(result.isStapled());
+        assertEquals("REVOKED", ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS)
+                .getCertStatus());
+    }
+
+    @Test
+    public void testSlowResponderTimesOut() throws Exception {
+        properties.setReadTimeout(Duration.ofMillis(200));
+        OCSPService ocspService = createService();
+        responder.setLatencyMillis(2000);
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:slow", "Slow", responder.getUrl());
+
+        long start = System.nanoTime();
+        OCSPResult result = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertEquals("UNKNOWN", result.getCertStatus());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+    }
+
+    @Test
+    public void testInFlightLimitPerResponder() throws Exception {
+        properties.setMaxInFlightPerResponder(1);
+        OCSPService ocspService = createService();
+        responder.setLatencyMillis(500);
+        X509Certificate first = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:busy1", "Busy 1", responder.getUrl());
+        X509Certificate second = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:busy2", "Busy 2", responder.getUrl());
+
+        CompletableFuture<OCSPResult> firstResult = ocspService.checkStatus(first, SUB_CA.getCertificate());
+        CompletableFuture<OCSPResult> secondResult = ocspService.checkStatus(second, SUB_CA.getCertificate());
+
+        try {
+            secondResult.get(5, TimeUnit.SECONDS);
+            fail("Second request should have been rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof OCSPResponderBusyException);
+        }
+        assertEquals("GOOD", firstResult.get(5, TimeUnit.SECONDS).getCertStatus());
+        // the permit is given back once the first request has completed
+        assertEquals("GOOD", ocspService.checkStatus(second, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS)
+                .getCertStatus());
+    }
+
+    @Test
+    public void testResponsesAreCachedUntilNextUpdate() throws Exception {
+        OCSPService ocspService = createService();
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:cached", "Cached", responder.getUrl());
+
+        OCSPResult first = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        OCSPResult second = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertFalse(first.isCached());
+        assertTrue(second.isCached());
+        assertEquals("GOOD", second.getCertStatus());
+        assertEquals(1, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testResponsesWithoutNextUpdateExpireAfterMaxAge() throws Exception {
+        properties.getCache().setMaxAge(Duration.ofMillis(100));
+        OCSPService ocspService = createService();
+        responder.setValidityMillis(0);
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:max-age", "Max Age", responder.getUrl());
+
+        ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        OCSPResult result = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertFalse(result.isCached());
+        assertEquals(2, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testStapledResponseIsVerifiedLocally() throws Exception {
+        OCSPService ocspService = createService();
+        X509Certificate good = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:stapled", "Stapled", responder.getUrl());
+        X509Certificate revoked = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:stapled2", "Stapled 2", responder.getUrl());
+        responder.revoke(revoked.getSerialNumber());
+        List<OCSPCheck> checks = new ArrayList<>();
+        checks.add(new OCSPCheck(good, SUB_CA.getCertificate(), responder.staple(good, new Date())));
+        checks.add(new OCSPCheck(revoked, SUB_CA.getCertificate(), responder.staple(revoked, new Date())));
+
+        List<CompletableFuture<OCSPResult>> futures = ocspService.checkStatuses(checks);
+        OCSPResult goodResult = futures.get(0).get(5, TimeUnit.SECONDS);
+        OCSPResult revokedResult = futures.get(1).get(5, TimeUnit.SECONDS);
+
+        assertTrue(goodResult.isStapled());
+        assertEquals("GOOD", goodResult.getCertStatus());
+        assertEquals(responder.getUrl(), goodResult.getOcspResponderUri());
+        assertTrue(revokedResult.isStapled());
+        assertEquals("REVOKED", revokedResult.getCertStatus());
+        assertEquals(0, responder.getRequestCount().get());
+        // a verified stapled response is cached for checks without one
+        assertTrue(ocspService.checkStatus(good, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS).isCached());
+    }
+
+    @Test
+    public void testStaleStapledResponseFallsBackToResponder() throws Exception {
+        OCSPService ocspService = createService();
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:stale", "Stale", responder.getUrl());
+        // valid for an hour from a day ago
+        byte[] stapled = responder.staple(cert, new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+        OCSPResult result = ocspService.checkStatuses(Collections.singletonList(
+                new OCSPCheck(cert, SUB_CA.getCertificate(), stapled))).get(0).get(5, TimeUnit.SECONDS);
+
+        assertFalse(result.isStapled());
+        assertEquals("GOOD", result.getCertStatus());
+        assertEquals(1, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testStapledResponseFromUnauthorizedSignerFallsBackToResponder() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OCSPService ocspService = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1)),
+                properties, new ExtractionMetrics(registry));
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:forged", "Forged", responder.getUrl());
+        responder.revoke(cert.getSerialNumber());
+        // another CA signs a GOOD answer for a certificate it did not issue
+        try (StandInOCSPResponder forger = new StandInOCSPResponder(SUB_CA, ROOT_CA.createSubCa("Forging CA"))) {
+            byte[] stapled = forger.staple(cert, new Date());
+
+            OCSPResult result = ocspService.checkStatuses(Collections.singletonList(
+                    new OCSPCheck(cert, SUB_CA.getCertificate(), stapled))).get(0).get(5, TimeUnit.SECONDS);
+
+            assertFalse(result.isStapled());
+            assertEquals("REVOKED", result.getCertStatus());
+            assertEquals(1, responder.getRequestCount().get());
+            assertEquals(1, registry.get(ExtractionMetrics.OCSP_STAPLED_COUNTER).tag("outcome", "rejected")
+                    .counter().count(), 0);
+        }
+    }
+
+    @Test
+    public void testReplicasShareResponsesThroughSharedCache() throws Exception {
+        try (StandInRedisServer redis = new StandInRedisServer();
+             RedisSharedCache firstShared = new RedisSharedCache(redis.getUrl(), Duration.ofSeconds(1), "extractid:");
+             RedisSharedCache secondShared = new RedisSharedCache(redis.getUrl(), Duration.ofSeconds(1), "extractid:")) {
+            OCSPService first = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1),
+                    firstShared, ExtractionMetrics.noop()), properties);
+            OCSPService second = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1),
+                    secondShared, ExtractionMetrics.noop()), properties);
+            List<OCSPCheck> checks = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                checks.add(new OCSPCheck(SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:shared" + i,
+                        "Shared " + i, responder.getUrl()), SUB_CA.getCertificate()));
+            }
+            responder.revoke(checks.get(1).getCertificate().getSerialNumber());
+
+            for (CompletableFuture<OCSPResult> future : first.checkStatuses(checks)) {
+                assertFalse(future.get(5, TimeUnit.SECONDS).isCached());
+            }
+            assertTrue(redis.awaitWrites(checks.size(), 5, TimeUnit.SECONDS));
+            List<CompletableFuture<OCSPResult>> futures = second.checkStatuses(checks);
+
+            for (int i = 0; i < checks.size(); i++) {
+                OCSPResult result = futures.get(i).get(5, TimeUnit.SECONDS);
+                assertTrue(result.isCached());
+                assertEquals(i == 1 ? "REVOKED" : "GOOD", result.getCertStatus());
+            }
+            assertEquals(1, responder.getRequestCount().get());
+        }
+    }
+
+    @Test
+    public void testForgedSharedResponseIsNotTrusted() throws Exception {
+        SharedCache shared = createMapSharedCache(new ConcurrentHashMap<>());
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:shared-forged",
+                "Shared forged", responder.getUrl());
+        responder.revoke(cert.getSerialNumber());
+        String key = OCSPResponseCache.getKey(OCSPUtils.createCertificateId(cert, SUB_CA.getCertificate()));
+        // another CA signs a GOOD answer and puts it where the replicas look for responses
+        try (StandInOCSPResponder forger = new StandInOCSPResponder(SUB_CA, ROOT_CA.createSubCa("Forging CA"))) {
+            byte[] forged = OCSPUtils.parseResponse(forger.staple(cert, new Date())).getEncoded();
+            new OCSPResponseCache(100, Duration.ofHours(1), shared, ExtractionMetrics.noop()).put(key,
+                    new CachedOCSPResponse(forged, CertStatus.GOOD, new Date(), null, System.currentTimeMillis()));
+        }
+        OCSPService ocspService = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1),
+                shared, ExtractionMetrics.noop()), properties);
+
+        OCSPResult result = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertEquals("REVOKED", result.getCertStatus());
+        assertEquals(1, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testCorruptSharedResponseIsIgnored() throws Exception {
+        Map<String, byte[]> entries = new ConcurrentHashMap<>();
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:shared-corrupt",
+                "Shared corrupt", responder.getUrl());
+        String key = OCSPResponseCache.getKey(OCSPUtils.createCertificateId(cert, SUB_CA.getCertificate()));
+        // an entry that claims to hold a response of almost 2 GB
+        entries.put("ocsp:" + key, ByteBuffer.allocate(13).put((byte) 2).putLong(System.currentTimeMillis())
+                .putInt(Integer.MAX_VALUE).array());
+        OCSPService ocspService = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1),
+                createMapSharedCache(entries), ExtractionMetrics.noop()), properties);
+
+        OCSPResult result = ocspService.checkStatus(cert, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+        assertEquals("GOOD", result.getCertStatus());
+        assertEquals(1, responder.getRequestCount().get());
+    }
+
+    @Test
+    public void testConcurrentChecksShareOneRequest() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OCSPService ocspService = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1)),
+                properties, new ExtractionMetrics(registry));
+        responder.setLatencyMillis(300);
+        X509Certificate cert = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:collapse", "Collapse", responder.getUrl());
+
+        List<CompletableFuture<OCSPResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(ocspService.checkStatus(cert, SUB_CA.getCertificate()));
+        }
+        for (CompletableFuture<OCSPResult> future : futures) {
+            assertEquals("GOOD", future.get(5, TimeUnit.SECONDS).getCertStatus());
+        }
+        assertEquals(1, responder.getRequestCount().get());
+        assertEquals(9, registry.get(ExtractionMetrics.COALESCED_COUNTER).tag("operation", "ocsp")
+                .counter().count(), 0);
+    }
+
+    @Test
+    public void testBatchIsGroupedByResponder() throws Exception {
+        properties.getBatch().setMaxRequestsPerQuery(3);
+        OCSPService ocspService = createService();
+        TestCertificateAuthority otherCa = ROOT_CA.createSubCa("Other Sub CA");
+        try (StandInOCSPResponder otherResponder = new StandInOCSPResponder(otherCa)) {
+            List<OCSPCheck> checks = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                checks.add(new OCSPCheck(SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:batch" + i,
+                        "Batch " + i, responder.getUrl()), SUB_CA.getCertificate()));
+                checks.add(new OCSPCheck(otherCa.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:other" + i,
+                        "Other " + i, otherResponder.getUrl()), otherCa.getCertificate()));
+            }
+            responder.revoke(checks.get(2).getCertificate().getSerialNumber());
+
+            List<CompletableFuture<OCSPResult>> futures = ocspService.checkStatuses(checks);
+
+            for (int i = 0; i < checks.size(); i++) {
+                OCSPResult result = futures.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(i == 2 ? "REVOKED" : "GOOD", result.getCertStatus());
+                assertEquals(i % 2 == 0 ? responder.getUrl() : otherResponder.getUrl(), result.getOcspResponderUri());
+            }
+            // five certificates per responder in requests of at most three
+            assertEquals(2, responder.getRequestCount().get());
+            assertEquals(2, otherResponder.getRequestCount().get());
+
+            // the answers of the batch are cached for single checks
+            assertTrue(ocspService.checkStatus(checks.get(0).getCertificate(), SUB_CA.getCertificate())
+                    .get(5, TimeUnit.SECONDS).isCached());
+        }
+    }
+
+    @Test
+    public void testResponderLatencyAndErrorsAreMeasured() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OCSPService ocspService = new OCSPService(httpClient, new OCSPResponseCache(100, Duration.ofHours(1)),
+                properties, new ExtractionMetrics(registry));
+        // signs its answers with a key the issuer has not authorized
+        try (StandInOCSPResponder forger = new StandInOCSPResponder(SUB_CA, ROOT_CA.createSubCa("Forging CA"))) {
+            X509Certificate good = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:metrics", "Metrics", responder.getUrl());
+            X509Certificate wrong = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:metrics2", "Metrics 2", forger.getUrl());
+            URL url = new URL(responder.getUrl());
+            String responderTag = url.getHost() + ":" + url.getPort();
+            URL forgerUrl = new URL(forger.getUrl());
+            String forgerTag = forgerUrl.getHost() + ":" + forgerUrl.getPort();
+
+            ocspService.checkStatus(good, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+            ocspService.checkStatus(wrong, SUB_CA.getCertificate()).get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, registry.get(ExtractionMetrics.OCSP_REQUEST_TIMER).tag("responder", responderTag)
+                    .tag("outcome", "success").timer().count());
+            assertEquals(1, registry.get(ExtractionMetrics.OCSP_REQUEST_TIMER).tag("responder", forgerTag)
+                    .tag("outcome", "success").timer().count());
+            assertEquals(1, registry.get(ExtractionMetrics.OCSP_ERROR_COUNTER).tag("responder", forgerTag)
+                    .counter().count(), 0);
+        }
+    }
+
+    private static SharedCache createMapSharedCache(Map<String, byte[]> entries) {
+        return new SharedCache() {
+            @Override
+            public Map<String, byte[]> getAll(Collection<String> keys) {
+                Map<String, byte[]> found = new HashMap<>();
+                keys.stream().filter(entries::containsKey).forEach(key -> found.put(key, entries.get(key)));
+                return found;
+            }
+
+            @Override
+            public void put(String key, byte[] value, long expiresAt) {
+                entries.put(key, value);
+            }
+        };
+    }
+}
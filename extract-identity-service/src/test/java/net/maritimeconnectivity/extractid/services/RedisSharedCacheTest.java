@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import net.maritimeconnectivity.extractid.support.StandInRedisServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RedisSharedCacheTest {
+
+    private StandInRedisServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInRedisServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testValuesAreSharedBetweenClients() throws Exception {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        try (RedisSharedCache writer = new RedisSharedCache(server.getUrl(), Duration.ofSeconds(1), "test:");
+             RedisSharedCache reader = new RedisSharedCache(server.getUrl(), Duration.ofSeconds(1), "test:")) {
+            writer.put("a", bytes("first"), expiresAt);
+            writer.put("b", bytes("second"), expiresAt);
+            assertTrue(server.awaitWrites(2, 5, TimeUnit.SECONDS));
+
+            Map<String, byte[]> values = reader.getAll(Arrays.asList("a", "b", "c"));
+
+            assertEquals(2, values.size());
+            assertArrayEquals(bytes("first"), values.get("a"));
+            assertArrayEquals(bytes("second"), values.get("b"));
+        }
+    }
+
+    @Test
+    public void testValuesExpire() throws Exception {
+        try (RedisSharedCache cache = new RedisSharedCache(server.getUrl(), Duration.ofSeconds(1), "test:")) {
+            cache.put("short", bytes("value"), System.currentTimeMillis() + 50);
+            cache.put("expired", bytes("value"), System.currentTimeMillis() - 1);
+            assertTrue(server.awaitWrites(1, 5, TimeUnit.SECONDS));
+            assertEquals(1, server.size());
+            Thread.sleep(100);
+
+            assertNull(cache.get("short"));
+            assertEquals(0, server.size());
+        }
+    }
+
+    @Test
+    public void testUnreachableServerActsAsEmpty() throws Exception {
+        URI closed;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closed = URI.create("redis://localhost:" + socket.getLocalPort());
+        }
+        try (RedisSharedCache cache = new RedisSharedCache(closed, Duration.ofMillis(200), "test:")) {
+            cache.put("a", bytes("value"), System.currentTimeMillis() + 60_000);
+
+            long start = System.nanoTime();
+            assertNull(cache.get("a"));
+            assertNull(cache.get("b"));
+            // the second lookup does not wait for the server again
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        }
+    }
+}
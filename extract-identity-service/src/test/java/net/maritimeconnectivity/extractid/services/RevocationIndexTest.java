@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RevocationIndexTest {
+
+    private static final BigInteger MAX_SERIAL = BigInteger.ONE.shiftLeft(160).subtract(BigInteger.ONE);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLookupOfSerialsOfDifferentLengths() throws Exception {
+        Random random = new Random(42);
+        Set<BigInteger> revoked = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            revoked.add(new BigInteger(1 + random.nextInt(160), random));
+        }
+        List<BigInteger> serials = new ArrayList<>(revoked);
+        Collections.shuffle(serials, random);
+
+        RevocationIndex index = RevocationIndex.create(folder.getRoot().toPath().resolve("test.idx"), serials);
+
+        assertEquals(revoked.size(), index.size());
+        for (BigInteger serial : revoked) {
+            assertTrue(index.isRevoked(serial));
+        }
+        for (int i = 0; i < 5000; i++) {
+            BigInteger serial = new BigInteger(1 + random.nextInt(160), random);
+            assertEquals(revoked.contains(serial), index.isRevoked(serial));
+        }
+    }
+
+    @Test
+    public void testBoundaryAndOversizedSerials() throws Exception {
+        BigInteger oversized = BigInteger.ONE.shiftLeft(170);
+        List<BigInteger> serials = new ArrayList<>();
+        serials.add(BigInteger.ZERO);
+        serials.add(MAX_SERIAL);
+        serials.add(MAX_SERIAL);
+        serials.add(oversized);
+
+        RevocationIndex index = RevocationIndex.create(folder.getRoot().toPath().resolve("test.idx"), serials);
+
+        assertEquals(3, index.size());
+        assertTrue(index.isRevoked(BigInteger.ZERO));
+        assertTrue(index.isRevoked(MAX_SERIAL));
+        assertTrue(index.isRevoked(oversized));
+        assertFalse(index.isRevoked(BigInteger.ONE));
+        assertFalse(index.isRevoked(MAX_SERIAL.subtract(BigInteger.ONE)));
+        assertFalse(index.isRevoked(BigInteger.valueOf(-1)));
+    }
+
+    @Test
+    public void testEmptyIndex() throws Exception {
+        RevocationIndex index = RevocationIndex.create(folder.getRoot().toPath().resolve("test.idx"),
+                Collections.emptyList());
+
+        assertEquals(0, index.size());
+        assertFalse(index.isRevoked(BigInteger.TEN));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private Counter coalesced;
+    private SingleFlight<String, String> singleFlight;
+
+    @Before
+    public void setUp() {
+        coalesced = new SimpleMeterRegistry().counter("coalesced");
+        singleFlight = new SingleFlight<>(coalesced);
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneComputation() throws Exception {
+        int callers = 8;
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "value";
+            })));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    computations.incrementAndGet();
+                    return "other";
+                })));
+            }
+            // wait until all the other callers are waiting for the first one
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (coalesced.count() < callers - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, computations.get());
+            assertEquals(callers - 1, coalesced.count(), 0);
+            assertEquals(0, singleFlight.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testResultsAreNotKept() {
+        assertEquals("first", singleFlight.execute("key", () -> "first"));
+        assertEquals("second", singleFlight.execute("key", () -> "second"));
+        assertEquals(0, coalesced.count(), 0);
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotKept() throws Exception {
+        IllegalStateException failure = new IllegalStateException("failed");
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = executor.submit(() -> singleFlight.execute("key", () -> {
+                await(release);
+                throw failure;
+            }));
+            while (singleFlight.size() == 0) {
+                Thread.sleep(10);
+            }
+            CompletableFuture<String> waiting = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> "other"));
+            while (coalesced.count() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            try {
+                waiting.join();
+                fail("The failure of the computation should be shared");
+            } catch (RuntimeException e) {
+                assertSame(failure, e.getCause());
+            }
+            try {
+                first.get(5, TimeUnit.SECONDS);
+                fail("The failure of the computation should be thrown");
+            } catch (Exception e) {
+                assertSame(failure, e.getCause());
+            }
+            assertEquals("value", singleFlight.execute("key", () -> "value"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncCallersShareOneComputation() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AtomicInteger computations = new AtomicInteger();
+
+        CompletableFuture<String> first = singleFlight.executeAsync("key", () -> {
+            computations.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync("key", () -> {
+            computations.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        pending.complete("value");
+
+        assertEquals("value", first.join());
+        assertEquals("value", second.join());
+        assertEquals(1, computations.get());
+        assertEquals(1, coalesced.count(), 0);
+        assertEquals(0, singleFlight.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
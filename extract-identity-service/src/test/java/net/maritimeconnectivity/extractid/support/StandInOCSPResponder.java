@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.Setter;
+import net.maritimeconnectivity.extractid.utils.OCSPUtils;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local OCSP responder for tests. It answers GOOD for every certificate that has not been revoked
+ * and signs its responses with the key of the CA, or of a delegated responder if one is given. It can
+ * also create responses without being asked, to be given to the service as stapled responses. Its
+ * latency and the fraction of requests that fail can be set to simulate slow or failing responders.
+ */
+public class StandInOCSPResponder implements AutoCloseable {
+
+    private static final String PATH = "/ocsp";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final TestCertificateAuthority issuer;
+    private final TestCertificateAuthority signer;
+    private final Map<BigInteger, Date> revoked = new ConcurrentHashMap<>();
+
+    @Getter
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    // delay before each answer, to simulate a slow responder
+    @Setter
+    private volatile long latencyMillis;
+
+    // fraction of requests that are answered with HTTP status 500, to simulate a failing responder
+    @Setter
+    private volatile double failureRate;
+
+    // time between thisUpdate and nextUpdate of the responses, or 0 to leave nextUpdate out
+    @Setter
+    private volatile long validityMillis = TimeUnit.HOURS.toMillis(1);
+
+    public StandInOCSPResponder(TestCertificateAuthority issuer) throws IOException {
+        this(issuer, issuer);
+    }
+
+    public StandInOCSPResponder(TestCertificateAuthority issuer, TestCertificateAuthority signer) throws IOException {
+        this.issuer = issuer;
+        this.signer = signer;
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH;
+    }
+
+    public void revoke(BigInteger serialNumber) {
+        revoked.put(serialNumber, new Date());
+    }
+
+    /**
+     * Creates a response like the ones this responder sends, without a request, as a TLS server would
+     * staple it
+     * @param cert       the certificate the response is about
+     * @param thisUpdate the time the response vouches for the status
+     * @return           the DER encoded OCSP response
+     */
+    public byte[] staple(X509Certificate cert, Date thisUpdate) throws Exception {
+        CertificateID certId = OCSPUtils.createCertificateId(cert, issuer.getCertificate());
+        return respond(Collections.singletonList(certId), thisUpdate).getEncoded();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            List<CertificateID> certIds = new ArrayList<>();
+            for (Req req : new OCSPReq(readAll(exchange.getRequestBody())).getRequestList()) {
+                certIds.add(req.getCertID());
+            }
+            byte[] response = respond(certIds, new Date()).getEncoded();
+            exchange.getResponseHeaders().set("Content-Type", "application/ocsp-response");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(500, -1);
+        } catch (Exception e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private OCSPResp respond(List<CertificateID> certIds, Date thisUpdate) throws Exception {
+        BasicOCSPRespBuilder builder = new JcaBasicOCSPRespBuilder(signer.getCertificate().getPublicKey(),
+                new JcaDigestCalculatorProviderBuilder().build().get(RespID.HASH_SHA1));
+        Date nextUpdate = validityMillis > 0 ? new Date(thisUpdate.getTime() + validityMillis) : null;
+        for (CertificateID certId : certIds) {
+            Date revocationTime = revoked.get(certId.getSerialNumber());
+            CertificateStatus status = revocationTime == null ? CertificateStatus.GOOD
+                    : new RevokedStatus(revocationTime, 0);
+            builder.addResponse(certId, status, thisUpdate, nextUpdate, null);
+        }
+        X509CertificateHolder[] chain = signer == issuer ? null
+                : new X509CertificateHolder[]{new JcaX509CertificateHolder(signer.getCertificate())};
+        BasicOCSPResp basicResp = builder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+                .build(signer.getKeyPair().getPrivate()), chain, thisUpdate);
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResp);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.support;
+
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local server for tests that speaks enough of the Redis protocol to be used as a shared cache.
+ * It keeps values in memory and understands PING, GET, MGET, SET with PX, PSETEX, DEL and QUIT.
+ */
+public class StandInRedisServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Entry> values = new ConcurrentHashMap<>();
+
+    private final Semaphore writes = new Semaphore(0);
+
+    @Getter
+    private final AtomicInteger commandCount = new AtomicInteger();
+
+    public StandInRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    public URI getUrl() {
+        return URI.create("redis://localhost:" + serverSocket.getLocalPort());
+    }
+
+    /**
+     * @return the number of keys with a value that has not expired
+     */
+    public int size() {
+        long now = System.currentTimeMillis();
+        return (int) values.values().stream().filter(entry -> entry.expiresAt > now).count();
+    }
+
+    /**
+     * Waits for values to be stored, counting the ones stored since the values that were last waited for
+     * @param count   the number of values
+     * @return        whether they were stored before the timeout
+     */
+    public boolean awaitWrites(int count, long timeout, TimeUnit unit) throws InterruptedException {
+        return writes.tryAcquire(count, timeout, unit);
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            List<byte[]> command;
+            while ((command = readCommand(in)) != null) {
+                commandCount.incrementAndGet();
+                boolean quit = execute(command, out);
+                out.flush();
+                if (quit) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    private boolean execute(List<byte[]> command, OutputStream out) throws IOException {
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+        long now = System.currentTimeMillis();
+        switch (name) {
+            case "PING":
+                writeSimple(out, "+PONG");
+                return false;
+            case "QUIT":
+                writeSimple(out, "+OK");
+                return true;
+            case "GET":
+                writeBulk(out, get(command.get(1), now));
+                return false;
+            case "MGET":
+                writeSimple(out, "*" + (command.size() - 1));
+                for (int i = 1; i < command.size(); i++) {
+                    writeBulk(out, get(command.get(i), now));
+                }
+                return false;
+            case "SET": {
+                long expiresAt = Long.MAX_VALUE;
+                for (int i = 3; i + 1 < command.size(); i += 2) {
+                    String option = new String(command.get(i), StandardCharsets.US_ASCII).toUpperCase();
+                    long amount = Long.parseLong(new String(command.get(i + 1), StandardCharsets.US_ASCII));
+                    if (option.equals("PX")) {
+                        expiresAt = now + amount;
+                    } else if (option.equals("EX")) {
+                        expiresAt = now + amount * 1000;
+                    }
+                }
+                values.put(key(command.get(1)), new Entry(command.get(2), expiresAt));
+                writes.release();
+                writeSimple(out, "+OK");
+                return false;
+            }
+            case "PSETEX":
+                values.put(key(command.get(1)), new Entry(command.get(3),
+                        now + Long.parseLong(new String(command.get(2), StandardCharsets.US_ASCII))));
+                writes.release();
+                writeSimple(out, "+OK");
+                return false;
+            case "DEL": {
+                int deleted = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    deleted += values.remove(key(command.get(i))) != null ? 1 : 0;
+                }
+                writeSimple(out, ":" + deleted);
+                return false;
+            }
+            default:
+                writeSimple(out, "-ERR unknown command '" + name + "'");
+                return false;
+        }
+    }
+
+    private byte[] get(byte[] key, long now) {
+        Entry entry = values.get(key(key));
+        return entry != null && entry.expiresAt > now ? entry.value : null;
+    }
+
+    private static String key(byte[] key) {
+        return new String(key, StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        if (header.charAt(0) != '*') {
+            throw new IOException("Expected an array but got " + header);
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String length = readLine(in);
+            if (length == null || length.charAt(0) != '$') {
+                throw new IOException("Expected a bulk string but got " + length);
+            }
+            byte[] argument = new byte[Integer.parseInt(length.substring(1))];
+            int read = 0;
+            while (read < argument.length) {
+                int n = in.read(argument, read, argument.length - read);
+                if (n == -1) {
+                    return null;
+                }
+                read += n;
+            }
+            readLine(in);
+            command.add(argument);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\r') {
+                in.read();
+                return line.toString(StandardCharsets.US_ASCII.name());
+            }
+            line.write(c);
+        }
+        return null;
+    }
+
+    private static void writeSimple(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            writeSimple(out, "$-1");
+            return;
+        }
+        writeSimple(out, "$" + value.length);
+        out.write(value);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private static class Entry {
+        private final byte[] value;
+        private final long expiresAt;
+
+        private Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
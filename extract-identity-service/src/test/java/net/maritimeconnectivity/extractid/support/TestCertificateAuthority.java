@@ -0,0 +1,287 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.support;
+
+import lombok.Getter;
+import net.maritimeconnectivity.pki.PKIConstants;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.DERUTF8String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A throwaway certificate authority that issues MCP style certificates for tests
+ */
+@Getter
+public class TestCertificateAuthority {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final X509Certificate certificate;
+    private final KeyPair keyPair;
+
+    private TestCertificateAuthority(X509Certificate certificate, KeyPair keyPair) {
+        this.certificate = certificate;
+        this.keyPair = keyPair;
+    }
+
+    /**
+     * Creates a self-signed root CA
+     * @param name the common name of the CA
+     */
+    public static TestCertificateAuthority createRoot(String name) {
+        try {
+            KeyPair keyPair = generateKeyPair();
+            X500Name subject = caName(name);
+            X509v3CertificateBuilder builder = builder(subject, subject, keyPair, daysFromNow(3650));
+            addCaExtensions(builder, keyPair, null);
+            return new TestCertificateAuthority(sign(builder, keyPair), keyPair);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not create test root CA", e);
+        }
+    }
+
+    /**
+     * Creates an intermediate CA issued by this CA
+     * @param name the common name of the intermediate CA
+     */
+    public TestCertificateAuthority createSubCa(String name) {
+        try {
+            KeyPair subKeyPair = generateKeyPair();
+            X509v3CertificateBuilder builder = builder(issuerName(), caName(name), subKeyPair, daysFromNow(1825));
+            addCaExtensions(builder, subKeyPair, certificate);
+            return new TestCertificateAuthority(sign(builder, keyPair), subKeyPair);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not create test sub CA", e);
+        }
+    }
+
+    /**
+     * Issues another CA certificate for the name and key of this CA, as when a CA certificate is renewed.
+     * Each such certificate can issue the others.
+     */
+    public X509Certificate recertify() {
+        try {
+            X509v3CertificateBuilder builder = builder(issuerName(), issuerName(), keyPair, daysFromNow(365));
+            addCaExtensions(builder, keyPair, certificate);
+            return sign(builder, keyPair);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not recertify test CA", e);
+        }
+    }
+
+    /**
+     * Creates a certificate that this CA has delegated OCSP signing to
+     * @param name the common name of the responder
+     */
+    public TestCertificateAuthority createOcspResponder(String name) {
+        try {
+            KeyPair responderKeyPair = generateKeyPair();
+            X509v3CertificateBuilder builder = builder(issuerName(), caName(name), responderKeyPair, daysFromNow(365));
+            builder.addExtension(Extension.extendedKeyUsage, false, new ExtendedKeyUsage(KeyPurposeId.id_kp_OCSPSigning));
+            builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature));
+            return new TestCertificateAuthority(sign(builder, keyPair), responderKeyPair);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not create test OCSP responder", e);
+        }
+    }
+
+    public X509Certificate issueVesselCertificate(String mrn, String vesselName, String ocspUrl) {
+        return issueVesselCertificate(mrn, vesselName, ocspUrl, daysFromNow(365));
+    }
+
+    /**
+     * Issues a vessel certificate with the MCP specific attributes in the subject alternative names
+     * @param mrn        the MRN of the vessel
+     * @param vesselName the name of the vessel
+     * @param ocspUrl    the OCSP responder URL to put in the certificate, may be null
+     * @param notAfter   the expiry of the certificate
+     * @param extensions further extensions to add to the certificate
+     */
+    public X509Certificate issueVesselCertificate(String mrn, String vesselName, String ocspUrl, Date notAfter,
+                                                  Extension... extensions) {
+        try {
+            KeyPair vesselKeyPair = generateKeyPair();
+            X500Name subject = new X500NameBuilder(BCStyle.INSTANCE)
+                    .addRDN(BCStyle.C, "DK")
+                    .addRDN(BCStyle.O, "urn:mrn:mcp:org:idp1:test")
+                    .addRDN(BCStyle.OU, "vessel")
+                    .addRDN(BCStyle.CN, vesselName)
+                    .addRDN(BCStyle.UID, mrn)
+                    .build();
+            X509v3CertificateBuilder builder = builder(issuerName(), subject, vesselKeyPair, notAfter);
+            JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+            builder.addExtension(Extension.authorityKeyIdentifier, false,
+                    extensionUtils.createAuthorityKeyIdentifier(certificate));
+            builder.addExtension(Extension.subjectKeyIdentifier, false,
+                    extensionUtils.createSubjectKeyIdentifier(vesselKeyPair.getPublic()));
+            builder.addExtension(Extension.keyUsage, true,
+                    new KeyUsage(KeyUsage.digitalSignature | KeyUsage.keyAgreement));
+            List<GeneralName> altNames = new ArrayList<>();
+            altNames.add(otherName(PKIConstants.MC_OID_MRN, mrn));
+            altNames.add(otherName(PKIConstants.MC_OID_FLAGSTATE, "DK"));
+            altNames.add(otherName(PKIConstants.MC_OID_CALLSIGN, "OWNP"));
+            altNames.add(otherName(PKIConstants.MC_OID_IMO_NUMBER, "9123456"));
+            altNames.add(otherName(PKIConstants.MC_OID_MMSI_NUMBER, "219000001"));
+            builder.addExtension(Extension.subjectAlternativeName, false,
+                    new GeneralNames(altNames.toArray(new GeneralName[0])));
+            if (ocspUrl != null) {
+                builder.addExtension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(
+                        AccessDescription.id_ad_ocsp, new GeneralName(GeneralName.uniformResourceIdentifier, ocspUrl)));
+            }
+            for (Extension extension : extensions) {
+                builder.addExtension(extension);
+            }
+            return sign(builder, keyPair);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not issue test vessel certificate", e);
+        }
+    }
+
+    /**
+     * Issues a CRL signed by this CA
+     * @param revoked    the serial numbers of the revoked certificates
+     * @param thisUpdate the issue time of the CRL
+     * @param nextUpdate the time the next CRL will be issued
+     * @param extensions further extensions to add to the CRL
+     */
+    public X509CRL createCrl(Collection<BigInteger> revoked, Date thisUpdate, Date nextUpdate, Extension... extensions) {
+        try {
+            X509v2CRLBuilder builder = new X509v2CRLBuilder(issuerName(), thisUpdate);
+            builder.setNextUpdate(nextUpdate);
+            for (BigInteger serialNumber : revoked) {
+                builder.addCRLEntry(serialNumber, thisUpdate, CRLReason.keyCompromise);
+            }
+            for (Extension extension : extensions) {
+                builder.addExtension(extension);
+            }
+            ContentSigner signer = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(keyPair.getPrivate());
+            return new JcaX509CRLConverter().getCRL(builder.build(signer));
+        } catch (GeneralSecurityException | IOException | OperatorCreationException e) {
+            throw new IllegalStateException("Could not create test CRL", e);
+        }
+    }
+
+    public static String toPem(X509Certificate cert) {
+        try {
+            return "-----BEGIN CERTIFICATE-----\n"
+                    + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(cert.getEncoded())
+                    + "\n-----END CERTIFICATE-----";
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encode certificate", e);
+        }
+    }
+
+    public static Date daysFromNow(int days) {
+        return new Date(System.currentTimeMillis() + days * DAY_MILLIS);
+    }
+
+    private X500Name issuerName() {
+        return X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+    }
+
+    private static X500Name caName(String name) {
+        return new X500NameBuilder(BCStyle.INSTANCE)
+                .addRDN(BCStyle.C, "DK")
+                .addRDN(BCStyle.O, "Test Maritime Connectivity Platform")
+                .addRDN(BCStyle.CN, name)
+                .build();
+    }
+
+    private static GeneralName otherName(String oid, String value) {
+        ASN1Encodable[] otherName = {new ASN1ObjectIdentifier(oid), new DERTaggedObject(true, 0, new DERUTF8String(value))};
+        return new GeneralName(GeneralName.otherName, new DERSequence(otherName));
+    }
+
+    private static X509v3CertificateBuilder builder(X500Name issuer, X500Name subject, KeyPair subjectKeyPair,
+                                                    Date notAfter) {
+        return new JcaX509v3CertificateBuilder(issuer, new BigInteger(64, RANDOM).abs().add(BigInteger.ONE),
+                new Date(System.currentTimeMillis() - DAY_MILLIS), notAfter, subject, subjectKeyPair.getPublic());
+    }
+
+    private static void addCaExtensions(X509v3CertificateBuilder builder, KeyPair subjectKeyPair,
+                                        X509Certificate issuerCert)
+            throws GeneralSecurityException, IOException {
+        JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils();
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        builder.addExtension(Extension.keyUsage, true,
+                new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign | KeyUsage.digitalSignature));
+        builder.addExtension(Extension.subjectKeyIdentifier, false,
+                extensionUtils.createSubjectKeyIdentifier(subjectKeyPair.getPublic()));
+        if (issuerCert != null) {
+            builder.addExtension(Extension.authorityKeyIdentifier, false,
+                    extensionUtils.createAuthorityKeyIdentifier(issuerCert));
+        }
+    }
+
+    private static X509Certificate sign(X509v3CertificateBuilder builder, KeyPair signerKeyPair)
+            throws GeneralSecurityException {
+        try {
+            ContentSigner signer = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(signerKeyPair.getPrivate());
+            return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+        } catch (OperatorCreationException e) {
+            throw new GeneralSecurityException(e);
+        }
+    }
+
+    private static KeyPair generateKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"), RANDOM);
+        return keyPairGenerator.generateKeyPair();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Pkcs7CertificateReaderTest {
+
+    private static final X509Certificate CERT = TestCertificateAuthority.createRoot("Test Root CA")
+            .createSubCa("Test Sub CA").issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:p7b", "Vessel", null);
+
+    @Test
+    public void testReadsBundleOfJdk() throws Exception {
+        byte[] p7b = CertificateFactory.getInstance("X.509").generateCertPath(Arrays.asList(CERT, CERT))
+                .getEncoded("PKCS7");
+
+        Pkcs7CertificateReader reader = new Pkcs7CertificateReader(new ByteArrayInputStream(p7b));
+        assertArrayEquals(CERT.getEncoded(), reader.next());
+        assertArrayEquals(CERT.getEncoded(), reader.next());
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void testReadsBundleWithoutCertificates() throws Exception {
+        byte[] p7b = CertificateFactory.getInstance("X.509").generateCertPath(Collections.emptyList())
+                .getEncoded("PKCS7");
+
+        assertNull(new Pkcs7CertificateReader(new ByteArrayInputStream(p7b)).next());
+    }
+
+    @Test
+    public void testReadsCertificatesAsTheyArrive() throws Exception {
+        // a bundle of about 600 MB that is generated while it is read
+        int count = 1_000_000;
+        GeneratedBundle bundle = new GeneratedBundle(CERT.getEncoded(), count);
+        Pkcs7CertificateReader reader = new Pkcs7CertificateReader(bundle);
+
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(CERT.getEncoded(), reader.next());
+        }
+        // nothing beyond the certificates that were returned has been read
+        assertTrue(bundle.read < bundle.prefix.length + 1001L * CERT.getEncoded().length);
+    }
+
+    @Test
+    public void testTruncatedBundleFails() throws Exception {
+        byte[] p7b = CertificateFactory.getInstance("X.509").generateCertPath(Arrays.asList(CERT, CERT))
+                .getEncoded("PKCS7");
+        Pkcs7CertificateReader reader = new Pkcs7CertificateReader(
+                new ByteArrayInputStream(Arrays.copyOf(p7b, p7b.length - CERT.getEncoded().length / 2)));
+
+        assertArrayEquals(CERT.getEncoded(), reader.next());
+        try {
+            reader.next();
+            fail("A truncated certificate should not be returned");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A DER encoded certs-only PKCS#7 bundle that repeats one certificate
+     */
+    private static class GeneratedBundle extends InputStream {
+
+        private final byte[] prefix;
+        private final byte[] cert;
+        private final byte[] suffix;
+        private final long certsEnd;
+        private long read;
+
+        GeneratedBundle(byte[] cert, int count) {
+            this.cert = cert;
+            long certsLength = (long) cert.length * count;
+            byte[] version = {0x02, 0x01, 0x01};
+            byte[] digestAlgorithms = {0x31, 0x00};
+            // ContentInfo with the data content type and no content
+            byte[] encapContentInfo = {0x30, 0x0b, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d,
+                    0x01, 0x07, 0x01};
+            this.suffix = new byte[]{0x31, 0x00};
+            byte[] certsHeader = header(0xa0, certsLength);
+            long signedDataLength = version.length + digestAlgorithms.length + encapContentInfo.length
+                    + certsHeader.length + certsLength + suffix.length;
+            byte[] signedDataHeader = header(0x30, signedDataLength);
+            byte[] signedDataOid = {0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x07, 0x02};
+            byte[] contentHeader = header(0xa0, signedDataHeader.length + signedDataLength);
+            long contentInfoLength = signedDataOid.length + contentHeader.length + signedDataHeader.length + signedDataLength;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] part : new byte[][]{header(0x30, contentInfoLength), signedDataOid, contentHeader,
+                    signedDataHeader, version, digestAlgorithms, encapContentInfo, certsHeader}) {
+                out.write(part, 0, part.length);
+            }
+            this.prefix = out.toByteArray();
+            this.certsEnd = prefix.length + certsLength;
+        }
+
+        private static byte[] header(int tag, long length) {
+            return new byte[]{(byte) tag, (byte) 0x84, (byte) (length >>> 24), (byte) (length >>> 16),
+                    (byte) (length >>> 8), (byte) length};
+        }
+
+        @Override
+        public int read() {
+            int b;
+            if (read < prefix.length) {
+                b = prefix[(int) read];
+            } else if (read < certsEnd) {
+                b = cert[(int) ((read - prefix.length) % cert.length)];
+            } else if (read < certsEnd + suffix.length) {
+                b = suffix[(int) (read - certsEnd)];
+            } else {
+                return -1;
+            }
+            read++;
+            return b & 0xff;
+        }
+    }
+}
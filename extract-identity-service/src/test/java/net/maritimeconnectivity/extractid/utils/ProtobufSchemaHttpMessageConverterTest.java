@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.protobuf.ProtobufMapper;
+import net.maritimeconnectivity.extractid.model.BatchResult;
+import net.maritimeconnectivity.extractid.model.CRLResult;
+import net.maritimeconnectivity.extractid.model.OCSPResult;
+import net.maritimeconnectivity.extractid.model.ValidationResult;
+import net.maritimeconnectivity.extractid.model.X509CertAttribute;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import net.maritimeconnectivity.pki.PKIIdentity;
+import net.maritimeconnectivity.pki.ocsp.CertStatus;
+import org.junit.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProtobufSchemaHttpMessageConverterTest {
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Test Root CA")
+            .createSubCa("Test Sub CA");
+    private static final X509Certificate CERT = SUB_CA.issueVesselCertificate("urn:mrn:mcp:vessel:idp1:test:protobuf",
+            "Protobuf Vessel", null);
+    private static final MediaType PROTOBUF = MediaType.valueOf(ProtobufSchemaHttpMessageConverter.PROTOBUF_VALUE);
+
+    private final ProtobufSchemaHttpMessageConverter converter = new ProtobufSchemaHttpMessageConverter();
+    // the JSON form without nulls, which is what a Protobuf message without the unset fields reads as
+    private final ObjectMapper jsonMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    @Test
+    public void testResultsRoundTrip() throws Exception {
+        PKIIdentity identity = CertificateUtils.getIdentity(CERT);
+        assertRoundTrip(identity, PKIIdentity.class, "PKIIdentity");
+
+        X509CertAttribute attributes = new X509CertAttribute(CERT).withFields(X509CertAttribute.OPTIONAL_FIELDS, "ab12");
+        assertRoundTrip(attributes, X509CertAttribute.class, "X509CertAttribute");
+
+        OCSPResult ocspResult = new OCSPResult(new URL("http://localhost/ocsp"), CertStatus.REVOKED, true, 3600L, null);
+        assertRoundTrip(ocspResult, OCSPResult.class, "OCSPResult");
+
+        CRLResult crlResult = new CRLResult("CN=Test Sub CA", CertStatus.GOOD, new Date(), TestCertificateAuthority.daysFromNow(1));
+        assertRoundTrip(crlResult, CRLResult.class, "CRLResult");
+
+        ValidationResult validationResult = new ValidationResult();
+        validationResult.setValid(true);
+        validationResult.setTrustAnchor("CN=Test Root CA");
+        validationResult.setChain(Arrays.asList(new ValidationResult.ChainElement(CERT),
+                new ValidationResult.ChainElement(SUB_CA.getCertificate())));
+        assertRoundTrip(validationResult, ValidationResult.class, "ValidationResult");
+    }
+
+    @Test
+    public void testBatchesRoundTrip() throws Exception {
+        List<BatchResult<OCSPResult>> batch = new ArrayList<>();
+        batch.add(new BatchResult<>(0, new OCSPResult(new URL("http://localhost/ocsp"), CertStatus.GOOD, false, 5L, null), null));
+        batch.add(new BatchResult<>(1, null, "Request does not contain a valid PEM encoded certificate"));
+        Type type = new ParameterizedTypeReference<List<BatchResult<OCSPResult>>>() { }.getType();
+
+        assertTrue(converter.canWrite(type, List.class, PROTOBUF));
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(batch, type, PROTOBUF, output);
+
+        JsonNode items = read(output.getBodyAsBytes(), "OCSPResultBatch").get("items");
+        assertEquals(jsonMapper.valueToTree(batch).toString(), items.toString());
+
+        // an empty batch is an empty message
+        output = new MockHttpOutputMessage();
+        converter.write(Collections.emptyList(), type, PROTOBUF, output);
+        assertEquals(0, output.getBodyAsBytes().length);
+    }
+
+    @Test
+    public void testOtherTypesAreLeftToOtherConverters() {
+        assertFalse(converter.canWrite(String.class, String.class, PROTOBUF));
+        assertFalse(converter.canWrite(List.class, List.class, PROTOBUF));
+        assertFalse(converter.canWrite(new ParameterizedTypeReference<List<String>>() { }.getType(), List.class, PROTOBUF));
+        assertFalse(converter.canWrite(PKIIdentity.class, PKIIdentity.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canRead(PKIIdentity.class, PROTOBUF));
+    }
+
+    private void assertRoundTrip(Object result, Class<?> type, String messageName) throws Exception {
+        assertTrue(converter.canWrite(type, type, PROTOBUF));
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(result, type, PROTOBUF, output);
+
+        // numbers read back as the types of the schema, so the trees are compared as text
+        assertEquals(jsonMapper.valueToTree(result).toString(), read(output.getBodyAsBytes(), messageName).toString());
+    }
+
+    private JsonNode read(byte[] message, String messageName) throws Exception {
+        return new ProtobufMapper().readerFor(JsonNode.class).with(converter.getSchema().forType(messageName))
+                .readValue(message);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.loadtests;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The latencies and HTTP statuses of the answers to one kind of request during a load test
+ */
+public class LatencyStats {
+
+    private long[] latencies = new long[4096];
+    private int count;
+    private int failures;
+    private final Map<Integer, Integer> statuses = new TreeMap<>();
+
+    public synchronized void record(int status, long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, 2 * count);
+        }
+        latencies[count++] = latencyNanos;
+        statuses.merge(status, 1, Integer::sum);
+    }
+
+    /**
+     * Counts a request that got no answer, because the connection failed or timed out
+     */
+    public synchronized void recordFailure() {
+        failures++;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return           the latency in nanoseconds that the given percentage of the answers were faster
+     *                   than or as fast as, or 0 if there were no answers
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getCount(int status) {
+        return statuses.getOrDefault(status, 0);
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the number of answers by HTTP status
+     */
+    public synchronized Map<Integer, Integer> getStatuses() {
+        return new TreeMap<>(statuses);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.loadtests;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sends requests from a number of simulated clients, each of which sends its next request as soon
+ * as it has the answer to the previous one. The kind of each request is drawn from a weighted mix.
+ * Every client draws from its own random generator with a fixed seed, so a run sends the same
+ * sequence of requests each time.
+ */
+public class LoadDriver implements Closeable {
+
+    private final CloseableHttpAsyncClient client;
+    private final int users;
+
+    public LoadDriver(int users) {
+        this.users = users;
+        this.client = HttpAsyncClients.custom()
+                .setMaxConnTotal(users)
+                .setMaxConnPerRoute(users)
+                .build();
+        this.client.start();
+    }
+
+    /**
+     * Sends requests for the given time. The answers during the first fifth of the time are not
+     * recorded, so caches, connection pools and the JIT compiler are warmed up.
+     * @param mix      the kinds of requests that are sent
+     * @param duration how long requests are sent
+     * @return         the latencies and statuses of the answers of each kind of request
+     */
+    public LoadResult run(List<Operation> mix, Duration duration) throws InterruptedException {
+        Map<String, LatencyStats> stats = new LinkedHashMap<>();
+        int totalWeight = 0;
+        for (Operation operation : mix) {
+            stats.put(operation.name, new LatencyStats());
+            totalWeight += operation.weight;
+        }
+        long start = System.nanoTime();
+        long measureFrom = start + duration.toNanos() / 5;
+        long end = start + duration.toNanos();
+
+        CountDownLatch finished = new CountDownLatch(users);
+        for (int user = 0; user < users; user++) {
+            new User(new Random(user), mix, totalWeight, stats, measureFrom, end, finished).sendNext();
+        }
+        if (!finished.await(duration.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Requests were still outstanding a minute after the end of the run");
+        }
+        return new LoadResult(stats, end - measureFrom);
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    /**
+     * A kind of request in the mix
+     */
+    public static class Operation {
+        private final String name;
+        private final int weight;
+        private final Function<Random, HttpUriRequest> request;
+
+        /**
+         * @param name    the name of the kind of request in the results
+         * @param weight  how often this kind of request is sent relative to the others
+         * @param request creates a request, choosing its content with the given random generator
+         */
+        public Operation(String name, int weight, Function<Random, HttpUriRequest> request) {
+            this.name = name;
+            this.weight = weight;
+            this.request = request;
+        }
+    }
+
+    private class User {
+        private final Random random;
+        private final List<Operation> mix;
+        private final int totalWeight;
+        private final Map<String, LatencyStats> stats;
+        private final long measureFrom;
+        private final long end;
+        private final CountDownLatch finished;
+
+        private User(Random random, List<Operation> mix, int totalWeight, Map<String, LatencyStats> stats,
+                     long measureFrom, long end, CountDownLatch finished) {
+            this.random = random;
+            this.mix = mix;
+            this.totalWeight = totalWeight;
+            this.stats = stats;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.finished = finished;
+        }
+
+        private void sendNext() {
+            long sentAt = System.nanoTime();
+            if (sentAt >= end) {
+                finished.countDown();
+                return;
+            }
+            Operation operation = choose();
+            LatencyStats operationStats = stats.get(operation.name);
+            client.execute(operation.request.apply(random), new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    try {
+                        EntityUtils.consume(response.getEntity());
+                    } catch (IOException e) {
+                        failed(e);
+                        return;
+                    }
+                    if (sentAt >= measureFrom) {
+                        operationStats.record(response.getStatusLine().getStatusCode(), System.nanoTime() - sentAt);
+                    }
+                    sendNext();
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    if (sentAt >= measureFrom) {
+                        operationStats.recordFailure();
+                    }
+                    sendNext();
+                }
+
+                @Override
+                public void cancelled() {
+                    failed(null);
+                }
+            });
+        }
+
+        private Operation choose() {
+            int chosen = random.nextInt(totalWeight);
+            for (Operation operation : mix) {
+                chosen -= operation.weight;
+                if (chosen < 0) {
+                    return operation;
+                }
+            }
+            throw new IllegalStateException("The weights of the mix are not positive");
+        }
+    }
+}
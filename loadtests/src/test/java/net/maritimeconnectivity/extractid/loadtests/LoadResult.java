@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.loadtests;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The answers recorded during a load test, by kind of request
+ */
+public class LoadResult {
+
+    private static final String HEADER = "request,answers,throughput/s,p50 ms,p99 ms,max ms,failures,statuses";
+
+    private final Map<String, LatencyStats> stats;
+    private final long measuredNanos;
+
+    LoadResult(Map<String, LatencyStats> stats, long measuredNanos) {
+        this.stats = stats;
+        this.measuredNanos = measuredNanos;
+    }
+
+    public LatencyStats get(String operation) {
+        return stats.get(operation);
+    }
+
+    /**
+     * @return the number of answers per second to a kind of request
+     */
+    public double getThroughput(String operation) {
+        return stats.get(operation).getCount() * (double) TimeUnit.SECONDS.toNanos(1) / measuredNanos;
+    }
+
+    /**
+     * Writes one line of comma separated values for each kind of request, after a header
+     */
+    public void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder(HEADER).append('\n');
+        stats.forEach((operation, operationStats) -> table.append(String.format(Locale.ROOT,
+                "%s,%d,%.1f,%.1f,%.1f,%.1f,%d,%s%n", operation, operationStats.getCount(), getThroughput(operation),
+                toMillis(operationStats.getPercentile(50)), toMillis(operationStats.getPercentile(99)),
+                toMillis(operationStats.getPercentile(100)), operationStats.getFailures(),
+                formatStatuses(operationStats.getStatuses()))));
+        return table.toString();
+    }
+
+    private static String formatStatuses(Map<Integer, Integer> statuses) {
+        return statuses.entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining(" "));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Maritime Connectivity Platform Consortium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.maritimeconnectivity.extractid.loadtests;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import net.maritimeconnectivity.extractid.ExtractIdentityService;
+import net.maritimeconnectivity.extractid.loadtests.LoadDriver.Operation;
+import net.maritimeconnectivity.extractid.support.StandInOCSPResponder;
+import net.maritimeconnectivity.extractid.support.TestCertificateAuthority;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts the service with a local OCSP responder and drives a mix of extraction, OCSP and batch
+ * requests at it while the responder is healthy, slow or failing. Every scenario checks fresh
+ * certificates, so it starts with cold caches. The latency percentiles and throughput of each kind
+ * of request are logged and written to target/load-reports/&lt;scenario&gt;.csv.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = ExtractIdentityService.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class MixedTrafficLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MixedTrafficLoadTest.class);
+
+    private static final Duration DURATION = DurationStyle.detectAndParse(System.getProperty("loadtests.duration", "10s"));
+    private static final int USERS = Integer.getInteger("loadtests.users", 64);
+    private static final Path REPORTS = Paths.get(System.getProperty("loadtests.reports", "target/load-reports"));
+
+    private static final String EXTRACT = "extract";
+    private static final String OCSP = "ocsp";
+    private static final String EXTRACT_BATCH = "extract-batch";
+    private static final String OCSP_BATCH = "ocsp-batch";
+
+    private static final int CERTIFICATES = 500;
+    private static final int BATCH_SIZE = 10;
+    private static final String JSON = "application/json";
+
+    private static final TestCertificateAuthority SUB_CA = TestCertificateAuthority.createRoot("Load Root CA")
+            .createSubCa("Load Sub CA");
+
+    @LocalServerPort
+    private int port;
+
+    private final Gson gson = new Gson();
+    private StandInOCSPResponder responder;
+    private LoadDriver driver;
+
+    @Before
+    public void setUp() throws IOException {
+        responder = new StandInOCSPResponder(SUB_CA);
+        driver = new LoadDriver(USERS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        driver.close();
+        responder.close();
+    }
+
+    @Test
+    public void testHealthyResponder() throws Exception {
+        responder.setLatencyMillis(20);
+
+        LoadResult result = run("healthy-responder");
+
+        assertNoServerErrors(result);
+        for (String operation : Arrays.asList(EXTRACT, OCSP, EXTRACT_BATCH, OCSP_BATCH)) {
+            assertMostlyAnswered(result, operation);
+        }
+    }
+
+    @Test
+    public void testSlowResponder() throws Exception {
+        long latencyMillis = 1500;
+        responder.setLatencyMillis(latencyMillis);
+
+        LoadResult result = run("slow-responder");
+
+        // OCSP checks may be shed with 503, but extraction must not wait for the responder
+        assertNoServerErrors(result);
+        assertMostlyAnswered(result, EXTRACT);
+        assertMostlyAnswered(result, EXTRACT_BATCH);
+        long p99Millis = TimeUnit.NANOSECONDS.toMillis(result.get(EXTRACT).getPercentile(99));
+        assertTrue("Extraction waited for the OCSP responder, p99 " + p99Millis + " ms", p99Millis < latencyMillis);
+    }
+
+    @Test
+    public void testFailingResponder() throws Exception {
+        responder.setLatencyMillis(20);
+        responder.setFailureRate(0.5);
+
+        LoadResult result = run("failing-responder");
+
+        // failed responder requests are answered with the status UNKNOWN, not with an error. Checks that
+        // are not cached keep the responder busy, so some of them may be shed.
+        assertNoServerErrors(result);
+        assertMostlyAnswered(result, EXTRACT);
+        assertMostlyAnswered(result, EXTRACT_BATCH);
+        assertTrue("No OCSP checks were answered", result.get(OCSP).getCount(200) > 0);
+    }
+
+    private LoadResult run(String scenario) throws InterruptedException, IOException {
+        List<String> pemCerts = new ArrayList<>(CERTIFICATES);
+        for (int i = 0; i < CERTIFICATES; i++) {
+            pemCerts.add(TestCertificateAuthority.toPem(SUB_CA.issueVesselCertificate(
+                    "urn:mrn:mcp:vessel:idp1:load:" + scenario + ":" + i, "Load " + i, responder.getUrl())));
+        }
+        String issuerPem = TestCertificateAuthority.toPem(SUB_CA.getCertificate());
+
+        List<Operation> mix = Arrays.asList(
+                new Operation(EXTRACT, 50, random -> post("/api/extract/mcp", pick(pemCerts, random),
+                        "application/x-pem-file")),
+                new Operation(OCSP, 30, random -> post("/api/extract/ocsp",
+                        gson.toJson(integratedCerts(pick(pemCerts, random), issuerPem)), JSON)),
+                new Operation(EXTRACT_BATCH, 10, random -> {
+                    JsonArray batch = new JsonArray();
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        batch.add(pick(pemCerts, random));
+                    }
+                    return post("/api/extract/mcp/batch", gson.toJson(batch), JSON);
+                }),
+                new Operation(OCSP_BATCH, 10, random -> {
+                    JsonArray batch = new JsonArray();
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        batch.add(integratedCerts(pick(pemCerts, random), issuerPem));
+                    }
+                    return post("/api/extract/ocsp/batch", gson.toJson(batch), JSON);
+                }));
+
+        LoadResult result = driver.run(mix, DURATION);
+        log.info("Scenario {} with {} clients for {}:\n{}", scenario, USERS, DURATION, result);
+        result.write(REPORTS.resolve(scenario + ".csv"));
+        return result;
+    }
+
+    private HttpUriRequest post(String path, String body, String contentType) {
+        HttpPost post = new HttpPost("http://localhost:" + port + path);
+        post.setEntity(new StringEntity(body, ContentType.create(contentType)));
+        return post;
+    }
+
+    private static String pick(List<String> pemCerts, Random random) {
+        return pemCerts.get(random.nextInt(pemCerts.size()));
+    }
+
+    private static JsonObject integratedCerts(String pemCert, String issuerPem) {
+        JsonObject integratedCerts = new JsonObject();
+        integratedCerts.addProperty("certificate", pemCert);
+        integratedCerts.addProperty("issuerCertificate", issuerPem);
+        return integratedCerts;
+    }
+
+    /**
+     * Checks that every request was answered, with 200 or with 503 when it was shed
+     */
+    private static void assertNoServerErrors(LoadResult result) {
+        for (String operation : Arrays.asList(EXTRACT, OCSP, EXTRACT_BATCH, OCSP_BATCH)) {
+            LatencyStats stats = result.get(operation);
+            assertEquals(operation + " requests without an answer", 0, stats.getFailures());
+            assertEquals(operation + " answers other than 200 and 503: " + stats.getStatuses(), stats.getCount(),
+                    stats.getCount(200) + stats.getCount(503));
+        }
+    }
+
+    private static void assertMostlyAnswered(LoadResult result, String operation) {
+        LatencyStats stats = result.get(operation);
+        assertTrue("Too few " + operation + " requests were answered: " + stats.getStatuses(),
+                stats.getCount() > 0 && stats.getCount(200) >= 0.9 * stats.getCount());
+    }
+}